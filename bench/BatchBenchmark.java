@@ -0,0 +1,109 @@
+import Genome.ANN;
+import Genome.Activation;
+import Genome.ConnectionGenes;
+import Genome.Network;
+
+import java.util.SplittableRandom;
+
+/*
+ * Mesure de l'évaluation par lot (Network.evaluateBatch) contre l'évaluation
+ * échantillon par échantillon, sur un réseau sans boucle de taille moyenne.
+ * Vérifie aussi que les deux donnent les mêmes sorties. À lancer deux fois pour
+ * comparer les boucles scalaires et l'API Vector :
+ *
+ *   java -cp out:bench BatchBenchmark
+ *   java --add-modules jdk.incubator.vector -cp out:bench BatchBenchmark
+ */
+public class BatchBenchmark {
+    private static final int NB_INPUTS = 8;
+    private static final int NB_OUTPUTS = 2;
+    private static final int NB_HIDDEN = 64;
+    private static final int FAN_IN = 8; // Connexions entrant dans chaque noeud caché et chaque sortie
+    private static final int[] BATCH_SIZES = {4, 64, 1024};
+
+    public static void main(String[] args) {
+        System.out.println("Boucles de l'évaluation par lot : " + Network.getBatchKernel());
+
+        for (Activation activation : Activation.values()) {
+            for (int nbSamples : BATCH_SIZES) {
+                run(activation, nbSamples);
+            }
+        }
+    }
+
+    private static void run(Activation activation, int nbSamples) {
+        SplittableRandom random = new SplittableRandom(42);
+        ANN ann = network(random);
+        ann.setActivation(activation);
+
+        float[] inputs = new float[nbSamples * NB_INPUTS];
+
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = (float) random.nextDouble(-1, 1);
+        }
+
+        float[] batch = new float[nbSamples * NB_OUTPUTS];
+        float[] single = new float[nbSamples * NB_OUTPUTS];
+        float[] sample = new float[NB_INPUTS];
+        float[] output = new float[NB_OUTPUTS];
+        int repeats = Math.max(1, 400000 / nbSamples);
+        long batchTime = Long.MAX_VALUE;
+        long singleTime = Long.MAX_VALUE;
+
+        // Meilleur de 5 mesures, après chauffe du JIT par les premières
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+
+            for (int r = 0; r < repeats; r++) {
+                ann.evaluateBatch(inputs, nbSamples, Network.Layout.RowMajor, batch);
+            }
+
+            batchTime = Math.min(batchTime, System.nanoTime() - start);
+            start = System.nanoTime();
+
+            for (int r = 0; r < repeats; r++) {
+                for (int s = 0; s < nbSamples; s++) {
+                    System.arraycopy(inputs, s * NB_INPUTS, sample, 0, NB_INPUTS);
+                    ann.evaluateNetwork(sample, output);
+                    System.arraycopy(output, 0, single, s * NB_OUTPUTS, NB_OUTPUTS);
+                }
+            }
+
+            singleTime = Math.min(singleTime, System.nanoTime() - start);
+        }
+
+        int different = 0;
+        double maxDifference = 0;
+
+        for (int i = 0; i < batch.length; i++) {
+            if (batch[i] != single[i]) {
+                different++;
+                maxDifference = Math.max(maxDifference, Math.abs(batch[i] - single[i]));
+            }
+        }
+
+        double samples = (double) repeats * nbSamples;
+        System.out.printf("%-16s lot de %4d : %7.1f ns/échantillon par lot, %7.1f ns/échantillon un par un (x%.2f), %d sorties différentes (écart max %.1e)%n",
+                activation, nbSamples, batchTime / samples, singleTime / samples, (double) singleTime / batchTime, different, maxDifference);
+    }
+
+    // Réseau en couches : chaque noeud caché lit FAN_IN noeuds de numéro inférieur, chaque sortie FAN_IN noeuds cachés
+    private static ANN network(SplittableRandom random) {
+        ConnectionGenes genes = new ConnectionGenes();
+        int firstHidden = NB_INPUTS + 1;
+        int firstOutput = NB_INPUTS + NB_HIDDEN; // Comme dans ANN : les sorties suivent les noeuds cachés possibles
+        int innovation = 1;
+
+        for (int node = firstHidden; node < firstOutput + NB_OUTPUTS; node++) {
+            for (int k = 0; k < FAN_IN; k++) {
+                int into = node < firstOutput ? random.nextInt(node) : firstHidden + random.nextInt(firstOutput - firstHidden);
+
+                if (genes.indexOfConnection(into, node) == -1) {
+                    genes.add(into, node, innovation++, (float) random.nextDouble(-2, 2), true);
+                }
+            }
+        }
+
+        return new ANN(genes, NB_INPUTS, NB_OUTPUTS, NB_HIDDEN);
+    }
+}
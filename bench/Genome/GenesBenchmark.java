@@ -0,0 +1,106 @@
+package Genome;
+
+import java.util.SplittableRandom;
+
+/*
+ * Mesure de la copie des gènes partagée jusqu'à modification (copy-on-write, par
+ * colonne) contre une copie immédiate de toutes les colonnes, pour les
+ * opérations qui suivent la copie d'un génome : rien (migration, sauvegarde), un
+ * poids modifié, un gène activé ou désactivé, un gène ajouté. Dans le package
+ * Genome pour lire les colonnes brutes.
+ *
+ *   java -cp out:bench Genome.GenesBenchmark
+ */
+public class GenesBenchmark {
+    private static final int[] SIZES = {8, 32, 128, 512}; // Nombre de gènes du génome copié
+    private static final int COPIES = 2000000; // Nombre de copies par mesure, pour le plus petit génome
+    static float sink; // Valeurs lues dans les copies, pour qu'elles ne soient pas éliminées par le JIT
+
+    public static void main(String[] args) {
+        for (Operation operation : Operation.values()) {
+            for (int size : SIZES) {
+                run(operation, size);
+            }
+        }
+    }
+
+    private static void run(Operation operation, int size) {
+        ConnectionGenes genes = genes(size);
+        int repeats = COPIES * SIZES[0] / size;
+        long sharedTime = Long.MAX_VALUE;
+        long eagerTime = Long.MAX_VALUE;
+        float check = 0;
+
+        // Meilleur de 5 mesures, après chauffe du JIT par les premières
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+
+            for (int r = 0; r < repeats; r++) {
+                check += operation.apply(new ConnectionGenes(genes), r);
+            }
+
+            sharedTime = Math.min(sharedTime, System.nanoTime() - start);
+            start = System.nanoTime();
+
+            for (int r = 0; r < repeats; r++) {
+                check += operation.apply(eagerCopy(genes), r);
+            }
+
+            eagerTime = Math.min(eagerTime, System.nanoTime() - start);
+        }
+
+        sink += check;
+        System.out.printf("%-8s %4d gènes : %7.1f ns partagée, %7.1f ns immédiate (x%.2f)%n",
+                operation, size, (double) sharedTime / repeats, (double) eagerTime / repeats, (double) eagerTime / sharedTime);
+    }
+
+    // Copie de toutes les colonnes, comme avant le partage
+    private static ConnectionGenes eagerCopy(ConnectionGenes genes) {
+        return new ConnectionGenes(genes.intoColumn().clone(), genes.outColumn().clone(), genes.innovationColumn().clone(),
+                genes.weightColumn().clone(), genes.enabledColumn().clone(), genes.size());
+    }
+
+    // Génome de size gènes aux n° d'innovation croissants, avec de la place pour en ajouter
+    private static ConnectionGenes genes(int size) {
+        SplittableRandom random = new SplittableRandom(42);
+        ConnectionGenes genes = new ConnectionGenes(size * 2);
+
+        for (int i = 0; i < size; i++) {
+            genes.add(random.nextInt(100), random.nextInt(100), i + 1, (float) random.nextDouble(-2, 2), random.nextInt(4) != 0);
+        }
+
+        return genes;
+    }
+
+    // Ce qui est fait à la copie, retourne une valeur lue dans la copie
+    private enum Operation {
+        Copy {
+            @Override
+            float apply(ConnectionGenes copy, int r) {
+                return copy.getWeight(0);
+            }
+        },
+        Weight {
+            @Override
+            float apply(ConnectionGenes copy, int r) {
+                int gene = r % copy.size();
+                copy.setWeight(gene, copy.getWeight(gene) + 0.5f);
+                return copy.getWeight(gene);
+            }
+        },
+        Enabled {
+            @Override
+            float apply(ConnectionGenes copy, int r) {
+                return copy.switchEnabled(r % copy.size()) ? 1 : 0;
+            }
+        },
+        Add {
+            @Override
+            float apply(ConnectionGenes copy, int r) {
+                return copy.add(1, 2, copy.maxInnovation() + 1, 0.5f, true);
+            }
+        };
+
+        abstract float apply(ConnectionGenes copy, int r);
+    }
+}
@@ -0,0 +1,308 @@
+import Genome.ANN;
+import Genome.GenomeCodec;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/*
+ * Sauvegarde de l'état complet d'un apprentissage Neat, pour le reprendre
+ * exactement là où il s'est arrêté : paramètres, graine et génération (qui
+ * suffisent à retrouver les générateurs aléatoires), registre d'innovations,
+ * numérotation des espèces et des génomes, puis chaque espèce (numéro,
+ * compteur de stabilité, tournoi) et ses génomes dans l'ordre (représentant,
+ * fit, n°, gènes, et valeurs des noeuds qui sont l'état des réseaux récurrents).
+ *
+ * L'état est encodé en mémoire entre 2 générations (les génomes par
+ * GenomeCodec), ce qui ne coûte qu'une fraction de génération. L'écriture se
+ * fait ensuite en arrière-plan dans un fichier temporaire, renommé à la fin :
+ * le fichier de sauvegarde est toujours complet, même si le processus meurt
+ * pendant l'écriture.
+ *
+ * La numérotation des espèces est commune à tout le processus (voir Specie) :
+ * load ne la modifie pas, c'est Neat.resume qui la reprend au n° sauvegardé.
+ * Une seule population reprise par processus retrouve donc les mêmes n°
+ * d'espèces, plusieurs populations en même temps se les partageraient.
+ */
+public class Checkpoint {
+    public static final int MAGIC = 0x4e454143; // "NEAC"
+    public static final int VERSION = 2; // Version 2 : n° des génomes
+    private static final byte FIRST = 1; // Bits de l'état d'un génome
+    private static final byte EVALUATED = 2;
+
+    private final Path file;
+    private final Path temporary; // Fichier écrit avant d'être renommé en file
+    private final ExecutorService writer; // Thread d'écriture des sauvegardes
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 16); // Dernier état encodé, réutilisé une fois écrit
+    private Future<?> pending; // Écriture en cours
+
+
+    /*
+     * Constructeur de la classe Checkpoint
+     * @param file : Fichier de sauvegarde, remplacé à chaque sauvegarde
+     */
+    public Checkpoint(Path file) {
+        this.file = file;
+        temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /*
+     * Encode l'état de neat puis l'écrit en arrière-plan. Si la sauvegarde
+     * précédente n'est pas terminée, on l'attend d'abord.
+     */
+    public void save(Neat neat) {
+        await();
+
+        ByteBuffer state = encode(neat);
+
+        pending = writer.submit(() -> {
+            try {
+                write(state);
+            } catch (IOException e) {
+                System.err.println("Sauvegarde impossible dans " + file + " : " + e);
+            }
+        });
+    }
+
+    // Attend la fin de l'écriture en cours
+    public void await() {
+        if (pending == null) {
+            return;
+        }
+
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+
+        pending = null;
+    }
+
+    // Relit une sauvegarde et retourne le Neat prêt à reprendre l'apprentissage
+    public static Neat load(Path file, int nbThreads) throws IOException {
+        ByteBuffer buffer;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Lecture du fichier entier
+            }
+
+            buffer.flip();
+        }
+
+        try {
+            return decode(buffer, nbThreads);
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new IOException("Sauvegarde invalide : " + file, e);
+        }
+    }
+
+    private void write(ByteBuffer state) throws IOException {
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (state.hasRemaining()) {
+                channel.write(state);
+            }
+
+            channel.force(true);
+        }
+
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Encode l'état dans le tampon (agrandi si besoin), retourne le tampon prêt à être lu
+    private ByteBuffer encode(Neat neat) {
+        InnovationRegistry innovations = neat.getInnovations();
+        int capacity = 72 + 12 * innovations.size() + GenomeCodec.HEADER_SIZE;
+
+        for (Specie specie : neat.getSpecies()) {
+            capacity += 16;
+
+            for (ANN ann : specie.getANNs()) {
+                capacity += 21 + GenomeCodec.maxEncodedSize(ann) + 4 * ann.getRoles().getNbNodes();
+            }
+        }
+
+        if (buffer.capacity() < capacity) {
+            buffer = ByteBuffer.allocate(capacity + capacity / 4);
+        }
+
+        ByteBuffer state = buffer;
+        state.clear();
+
+        state.putInt(MAGIC);
+        state.putInt(VERSION);
+
+        // Paramètres et position de l'apprentissage
+        state.putInt(neat.getFixedPopulationSize());
+        state.putInt(neat.getNbMaxStable());
+        state.putDouble(neat.getC1());
+        state.putDouble(neat.getC2());
+        state.putDouble(neat.getC3());
+        state.putDouble(neat.getThresholdDistanciation());
+        state.putInt(neat.getTauxMutation());
+        state.putInt(neat.getTournamentSize());
+        state.putLong(neat.getSeed());
+        state.putInt(neat.getGeneration());
+        state.putInt(Specie.getLastSpecieNumber());
+        state.putLong(neat.getNextGenomeId());
+
+        // Registre d'innovations
+        state.putInt(innovations.size());
+        innovations.forEach((into, out, innovation) -> {
+            state.putInt(into);
+            state.putInt(out);
+            state.putInt(innovation);
+        });
+
+        // Espèces et génomes
+        GenomeCodec.writeHeader(state);
+        state.putInt(neat.getSpecies().size());
+
+        for (Specie specie : neat.getSpecies()) {
+            state.putInt(specie.getSpecieNumber());
+            state.putInt(specie.getStableCounter());
+            state.putInt(specie.getTournamentSize());
+            state.putInt(specie.getANNs().size());
+
+            for (ANN ann : specie.getANNs()) {
+                state.put((byte) ((ann.first ? FIRST : 0) | (ann.isEvaluated() ? EVALUATED : 0)));
+                state.putDouble(ann.fit);
+                state.putLong(ann.id);
+                GenomeCodec.encode(ann, state);
+
+                float[] values = ann.getState(); // Aucune valeur si le réseau n'a pas encore été généré
+                state.putInt(values != null ? values.length : 0);
+
+                for (int k = 0; values != null && k < values.length; k++) {
+                    state.putFloat(values[k]);
+                }
+            }
+        }
+
+        state.flip();
+
+        return state;
+    }
+
+    private static Neat decode(ByteBuffer state, int nbThreads) {
+        if (state.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Ce n'est pas une sauvegarde Neat");
+        }
+
+        int version = state.getInt();
+
+        if (version < 1 || version > VERSION) {
+            throw new IllegalArgumentException("Version " + version + " non supportée (version actuelle : " + VERSION + ")");
+        }
+
+        int populationSize = state.getInt();
+        int nbMaxStable = state.getInt();
+        double c1 = state.getDouble();
+        double c2 = state.getDouble();
+        double c3 = state.getDouble();
+        double thresholdDistanciation = state.getDouble();
+        int tauxMutation = state.getInt();
+        int tournamentSize = state.getInt();
+        long seed = state.getLong();
+        int generation = state.getInt();
+        int lastSpecieNumber = state.getInt();
+        long nextGenomeId = version >= 2 ? state.getLong() : 0; // Sans n°, les génomes sont numérotés à la reprise
+
+        int nbInnovations = state.getInt();
+
+        if (nbInnovations < 0 || nbInnovations > state.remaining() / 12) {
+            throw new IllegalArgumentException("Registre d'innovations invalide (" + nbInnovations + " connexions)");
+        }
+
+        InnovationRegistry innovations = new InnovationRegistry(nbInnovations);
+
+        for (int i = 0; i < nbInnovations; i++) {
+            innovations.register(state.getInt(), state.getInt(), state.getInt());
+        }
+
+        GenomeCodec.readHeader(state);
+        int nbSpecies = state.getInt();
+        if (nbSpecies < 0 || nbSpecies > state.remaining() / 16) {
+            throw new IllegalArgumentException("Nombre d'espèces invalide : " + nbSpecies);
+        }
+
+        ArrayList<Specie> species = new ArrayList<>();
+        int[] tournaments = new int[nbSpecies];
+
+        for (int i = 0; i < nbSpecies; i++) {
+            int specieNumber = state.getInt();
+            int stableCounter = state.getInt();
+            tournaments[i] = state.getInt();
+            int nbANNs = state.getInt();
+            ArrayList<ANN> anns = new ArrayList<>();
+
+            for (int j = 0; j < nbANNs; j++) {
+                byte flags = state.get();
+                double fit = state.getDouble();
+                long id = version >= 2 ? state.getLong() : -1;
+                ANN ann = GenomeCodec.decode(state);
+                ann.id = id;
+                int nbValues = state.getInt();
+
+                if (nbValues < 0 || nbValues > state.remaining() / 4) {
+                    throw new IllegalArgumentException("Nombre de valeurs invalide : " + nbValues);
+                }
+
+                if (nbValues > 0) {
+                    float[] values = new float[nbValues];
+                    state.asFloatBuffer().get(values);
+                    state.position(state.position() + 4 * nbValues);
+                    ann.setState(values);
+                }
+
+                ann.first = (flags & FIRST) != 0;
+
+                if ((flags & EVALUATED) != 0) {
+                    ann.setFit(fit);
+                } else {
+                    ann.fit = fit;
+                }
+
+                anns.add(ann);
+            }
+
+            species.add(new Specie(c1, c2, c3, tauxMutation, specieNumber, stableCounter, anns));
+        }
+
+        Neat neat = new Neat(species, populationSize, nbMaxStable, c1, c2, c3, thresholdDistanciation, tauxMutation, nbThreads);
+        neat.setInnovations(innovations);
+        neat.setSeed(seed);
+        neat.setGeneration(generation);
+        neat.setNextGenomeId(Math.max(nextGenomeId, neat.getNextGenomeId()));
+        neat.setTournamentSize(tournamentSize); // Pour les espèces à venir
+
+        for (int i = 0; i < nbSpecies; i++) {
+            species.get(i).setTournamentSize(tournaments[i]);
+        }
+
+        neat.setSavedSpecieNumber(lastSpecieNumber); // Rétabli par Neat.resume
+
+        return neat;
+    }
+}
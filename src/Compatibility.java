@@ -0,0 +1,149 @@
+import Genome.ConnectionGenes;
+
+/*
+ * Classe calculant la distance de compatibilité entre un génome et le membre
+ * représentatif d'une espèce, utilisée par Neat (distanciation) et par Specie
+ * (calcul du nouveau représentant). Les 2 génomes étant triés par n°
+ * d'innovation, E, D et W sont obtenus en un seul passage, sans allocation.
+ * Une instance n'est utilisée que par un seul thread.
+ */
+public class Compatibility {
+    private final double C1; // Coefficients de la formule de distanciation
+    private final double C2;
+    private final double C3;
+    private int excess; // E : gènes non communs dans le range des n° d'innovation du représentant
+    private int disjoint; // D : gènes non communs au-delà du n° d'innovation maximum du représentant
+    private double weightDifference; // W : différence de poids moyenne sur les gènes communs
+
+    /*
+     * Constructeur de la classe Compatibility
+     * @param C1 Coefficient de la formule de distanciation
+     * 		   C2 Coefficient de la formule de distanciation
+     * 		   C3 Coefficient de la formule de distanciation
+     */
+    public Compatibility(double c1, double c2, double c3) {
+        C1 = c1;
+        C2 = c2;
+        C3 = c3;
+    }
+
+    public int getExcess() {
+        return excess;
+    }
+
+    public int getDisjoint() {
+        return disjoint;
+    }
+
+    public double getWeightDifference() {
+        return weightDifference;
+    }
+
+    // delta = (C1 * E) / N + (C2 * D) / N + C3 * W
+    // N = nombre de gènes du génome le plus grand de l'espèce
+    public double distance(ConnectionGenes reference, ConnectionGenes genes, int n) {
+        return distance(reference, genes, n, Double.POSITIVE_INFINITY);
+    }
+
+    /*
+     * Calcule delta, en s'arrêtant dès que les termes de E et D suffisent à dépasser
+     * bound (W ne peut que l'augmenter) : retourne alors Double.POSITIVE_INFINITY,
+     * et E, D et W ne sont que partiels.
+     */
+    public double distance(ConnectionGenes reference, ConnectionGenes genes, int n, double bound) {
+        if (!measure(reference, genes, n, bound)) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        return delta(n);
+    }
+
+    // Calcule delta à partir des derniers E, D et W mesurés
+    public double delta(int n) {
+        return delta(excess, disjoint, weightDifference, n);
+    }
+
+    // Calcule delta à partir de E, D et W mesurés auparavant (N peut avoir changé depuis)
+    public double delta(int excess, int disjoint, double weightDifference, int n) {
+        if (n > 0) { // Pour éviter de faire une division par zéro
+            return (C1 * excess) / n + (C2 * disjoint) / n + C3 * weightDifference;
+        }
+
+        return 0;
+    }
+
+    /*
+     * Mesure E, D et W entre le représentant et le génome. Seuls les gènes non
+     * communs du génome comptent pour E et D, et rien n'est compté si le
+     * représentant n'a aucun gène.
+     */
+    public void measure(ConnectionGenes reference, ConnectionGenes genes) {
+        measure(reference, genes, 0, Double.POSITIVE_INFINITY);
+    }
+
+    // Mesure E, D et W, retourne false si la mesure a été abandonnée car delta dépasse bound (seulement si n > 0)
+    private boolean measure(ConnectionGenes reference, ConnectionGenes genes, int n, double bound) {
+        excess = 0;
+        disjoint = 0;
+        weightDifference = 0;
+
+        if (reference.size() == 0) {
+            return true;
+        }
+
+        int maxInnovation = reference.maxInnovation();
+        boolean bounded = n > 0 && bound != Double.POSITIVE_INFINITY;
+        int nbCommons = 0;
+        int i = 0;
+        int j = 0;
+
+        while (j < genes.size()) {
+            int innovation = genes.getInnovation(j);
+
+            if (i < reference.size() && reference.getInnovation(i) < innovation) { // Gène propre au représentant, ne compte pas
+                i++;
+            } else if (i < reference.size() && reference.getInnovation(i) == innovation) { // Gènes communs
+                int end1 = i;
+                int end2 = j;
+
+                // Un n° d'innovation peut apparaître plusieurs fois dans un génome, chaque paire est alors considérée
+                while (end1 < reference.size() && reference.getInnovation(end1) == innovation) {
+                    end1++;
+                }
+
+                while (end2 < genes.size() && genes.getInnovation(end2) == innovation) {
+                    end2++;
+                }
+
+                for (int gene1 = i; gene1 < end1; gene1++) {
+                    for (int gene2 = j; gene2 < end2; gene2++) {
+                        weightDifference += Math.abs(reference.getWeight(gene1) - genes.getWeight(gene2));
+                        nbCommons++;
+                    }
+                }
+
+                i = end1;
+                j = end2;
+            } else { // Gène propre au génome
+                if (innovation < maxInnovation) {
+                    excess++;
+                } else {
+                    disjoint++;
+                }
+
+                // Même calcul que delta, sans W qui est positif : le dépasser déjà ne laisse aucune chance
+                if (bounded && (C1 * excess) / n + (C2 * disjoint) / n > bound) {
+                    return false;
+                }
+
+                j++;
+            }
+        }
+
+        if (nbCommons > 0) { // Pour éviter de faire une division par zéro pour la moyenne (W devenait NaN sinon)
+            weightDifference /= nbCommons;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,13 @@
+import Genome.ANN;
+
+import java.util.List;
+
+/*
+ * Interface d'évaluation des génomes : calcule le fit de chaque ANN de la liste
+ * et l'enregistre avec ANN.setFit. Neat l'utilise pour évaluer en une seule fois
+ * tous les génomes de la population dont le fit n'est pas à jour.
+ */
+public interface FitnessEvaluator {
+
+    void evaluate(List<ANN> anns);
+}
@@ -0,0 +1,126 @@
+import Genome.ANN;
+import Genome.GenomeCodec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/*
+ * Protocole entre RemoteFitnessEvaluator (le coordinateur) et FitnessWorker,
+ * sur une connexion TCP. Le coordinateur envoie des lots de génomes, le worker
+ * répond pour chaque lot, dans l'ordre de réception, par le fit de chacun :
+ *
+ *   lot     : MAGIC, n° du lot, nombre de génomes, taille en octets, puis les génomes
+ *   réponse : MAGIC, n° du lot, nombre de fits, puis chaque fit (double)
+ *
+ * Les génomes sont encodés par GenomeCodec, avec son en-tête : un worker d'une
+ * autre version du format refuse le lot au lieu de mal le lire. L'état des
+ * réseaux (valeurs des noeuds) n'est pas envoyé : l'évaluation XOR repart d'un
+ * réseau remis à zéro, le fit d'un worker est donc celui d'une évaluation locale.
+ */
+final class FitnessProtocol {
+    static final int MAGIC = 0x4e454154; // "NEAT", pour détecter un flux désynchronisé
+    static final int MAX_BATCH_BYTES = 64 << 20; // Taille maximale d'un lot, un lot plus grand est refusé avant d'allouer son tampon
+    private static final int MIN_GENOME_BYTES = 5; // Plus petit génome encodé (sans gène) : 4 varints et l'activation
+
+    private FitnessProtocol() {
+    }
+
+    static void writeBatch(DataOutputStream out, int batch, List<ANN> anns) throws IOException {
+        int capacity = GenomeCodec.HEADER_SIZE;
+
+        for (ANN ann : anns) {
+            capacity += GenomeCodec.maxEncodedSize(ann);
+        }
+
+        // Rien n'est encore écrit : une erreur de l'appelant (lot non découpé), pas une connexion perdue
+        if (capacity < 0 || capacity > MAX_BATCH_BYTES) { // Négatif si la somme dépasse un int
+            throw new IllegalArgumentException("Lot " + batch + " trop grand pour un worker (" + anns.size() + " génomes), à découper avant l'envoi");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+        GenomeCodec.writeHeader(buffer);
+
+        for (ANN ann : anns) {
+            GenomeCodec.encode(ann, buffer);
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(batch);
+        out.writeInt(anns.size());
+        out.writeInt(buffer.position());
+        out.write(buffer.array(), 0, buffer.position());
+        out.flush();
+    }
+
+    // Lit un lot et retourne son n°, les génomes sont ajoutés à anns
+    static int readBatch(DataInputStream in, List<ANN> anns) throws IOException {
+        checkMagic(in.readInt());
+        int batch = in.readInt();
+        int size = in.readInt();
+        int length = in.readInt();
+
+        // Un en-tête corrompu ne doit pas faire allouer un tampon démesuré
+        if (size < 0 || length < GenomeCodec.HEADER_SIZE || length > MAX_BATCH_BYTES
+                || size > (length - GenomeCodec.HEADER_SIZE) / MIN_GENOME_BYTES) {
+            throw new IOException("Lot " + batch + " invalide (" + size + " génomes, " + length + " octets)");
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            GenomeCodec.readHeader(buffer);
+
+            for (int i = 0; i < size; i++) {
+                anns.add(GenomeCodec.decode(buffer));
+            }
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new IOException("Lot " + batch + " invalide", e);
+        }
+
+        return batch;
+    }
+
+    static void writeFits(DataOutputStream out, int batch, List<ANN> anns) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(batch);
+        out.writeInt(anns.size());
+
+        for (ANN ann : anns) {
+            out.writeDouble(ann.fit);
+        }
+
+        out.flush();
+    }
+
+    // Lit la réponse au lot attendu et enregistre le fit de chaque génome
+    static void readFits(DataInputStream in, int batch, List<ANN> anns) throws IOException {
+        checkMagic(in.readInt());
+
+        if (in.readInt() != batch || in.readInt() != anns.size()) {
+            throw new IOException("Réponse inattendue, le lot " + batch + " de " + anns.size() + " génomes était attendu");
+        }
+
+        double[] fits = new double[anns.size()];
+
+        for (int i = 0; i < fits.length; i++) {
+            fits[i] = in.readDouble();
+        }
+
+        // Les fits ne sont enregistrés qu'une fois la réponse entière reçue : un lot perdu reste non évalué
+        for (int i = 0; i < fits.length; i++) {
+            anns.get(i).setFit(fits[i]);
+        }
+    }
+
+    private static void checkMagic(int magic) throws IOException {
+        if (magic != MAGIC) {
+            throw new IOException("Flux invalide (en-tête " + Integer.toHexString(magic) + ")");
+        }
+    }
+}
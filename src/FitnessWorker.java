@@ -0,0 +1,99 @@
+import Genome.ANN;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+
+/*
+ * Processus évaluant les génomes envoyés par un RemoteFitnessEvaluator (voir
+ * FitnessProtocol). Chaque connexion est servie par son propre thread, qui
+ * évalue les lots un par un, dans l'ordre, avec le FitnessEvaluator fourni.
+ *
+ * Lancement : java FitnessWorker <port> [nombre de threads]
+ */
+public class FitnessWorker implements AutoCloseable {
+    private final ServerSocket server;
+    private final FitnessEvaluator evaluator;
+
+    /*
+     * Constructeur de la classe FitnessWorker
+     * @param port : Port d'écoute (0 = choisi par le système, voir getPort)
+     * @param evaluator : Évaluation des génomes reçus, utilisée par toutes les connexions en même temps
+     */
+    public FitnessWorker(int port, FitnessEvaluator evaluator) throws IOException {
+        server = new ServerSocket(port);
+        this.evaluator = evaluator;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = Integer.parseInt(args[0]);
+        int nbThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        try (FitnessWorker worker = new FitnessWorker(port, new ParallelFitnessEvaluator(new ForkJoinPool(nbThreads)))) {
+            System.out.println("Worker en attente sur le port " + worker.getPort());
+            worker.serve();
+        }
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    // Accepte les connexions jusqu'à la fermeture du worker
+    public void serve() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                Thread thread = new Thread(() -> handle(socket), "FitnessWorker-" + socket.getPort());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    System.err.println("Connexion refusée : " + e);
+                }
+            }
+        }
+    }
+
+    // Lance serve dans un thread à part (daemon), pour un worker dans le même processus que le coordinateur
+    public void start() {
+        Thread thread = new Thread(this::serve, "FitnessWorker");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    // Évalue les lots d'une connexion jusqu'à ce que le coordinateur la ferme
+    private void handle(Socket socket) {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            ArrayList<ANN> anns = new ArrayList<>();
+
+            while (true) {
+                anns.clear();
+                int batch = FitnessProtocol.readBatch(in, anns);
+
+                evaluator.evaluate(anns);
+                FitnessProtocol.writeFits(out, batch, anns);
+            }
+        } catch (EOFException e) {
+            // Connexion fermée par le coordinateur
+        } catch (IOException e) {
+            System.err.println("Connexion perdue : " + e);
+        }
+    }
+}
@@ -0,0 +1,583 @@
+import Genome.ANN;
+import Genome.GenomeCodec;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/*
+ * Journal binaire d'un apprentissage, où l'on ajoute un enregistrement par
+ * génération, pour analyser l'apprentissage après coup sans le relancer :
+ *
+ *   en-tête      : MAGIC, VERSION, en-tête de GenomeCodec, première génération
+ *   enregistrement : taille (sans ce champ), génération, nombre d'espèces, puis
+ *                    pour chaque espèce son n°, sa taille, son meilleur fit, son
+ *                    fit moyen et le n° de son représentant, la durée de chaque
+ *                    phase (PHASES, en ns), et enfin le champion (n°, fit et
+ *                    génome encodé par GenomeCodec)
+ *
+ * Un index (fichier journal + ".idx") contient la position de chaque
+ * enregistrement (long), dans l'ordre des générations : Reader s'en sert pour
+ * aller directement à une génération.
+ *
+ * Pendant l'apprentissage, seul l'encodage de l'enregistrement (quelques
+ * centaines d'octets) se fait dans la boucle, dans un tampon recyclé.
+ * L'écriture se fait en arrière-plan, par blocs de BUFFER_SIZE octets.
+ */
+public class GenerationJournal implements AutoCloseable {
+    public static final int MAGIC = 0x4e45414a; // "NEAJ"
+    public static final int VERSION = 1;
+    public static final String[] PHASES = {"Évaluation", "Sélection", "Reproduction", "Distanciation"};
+    public static final int EVALUATION = 0; // Indices des durées des phases
+    public static final int SELECTION = 1;
+    public static final int REPRODUCTION = 2;
+    public static final int DISTANCIATION = 3;
+    private static final int HEADER_SIZE = 8 + GenomeCodec.HEADER_SIZE + 4;
+    private static final int BUFFER_SIZE = 1 << 16; // Taille des blocs écrits dans le journal
+
+    private final FileChannel channel;
+    private final FileChannel index;
+    private final ExecutorService writer; // Thread d'écriture du journal
+    private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>(); // Tampons d'enregistrement déjà écrits, à réutiliser
+    private final ByteBuffer data = ByteBuffer.allocateDirect(BUFFER_SIZE); // Enregistrements en attente d'écriture (thread d'écriture seulement)
+    private final ByteBuffer offsets = ByteBuffer.allocateDirect(BUFFER_SIZE); // Positions en attente d'écriture dans l'index (idem)
+    private long position; // Position du prochain enregistrement dans le journal (idem)
+    private volatile IOException failure; // Première erreur d'écriture, signalée par flush
+    private Future<?> pending; // Dernière écriture demandée
+
+
+    /*
+     * Constructeur de la classe GenerationJournal : ouvre le journal, ou le crée.
+     * Les enregistrements d'un journal existant à partir de la génération
+     * generation sont retirés : un apprentissage repris d'une sauvegarde les
+     * refait.
+     * @param file : Fichier du journal
+     * @param generation : Génération du prochain enregistrement
+     */
+    public GenerationJournal(Path file, int generation) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(indexFile(file), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            int first = channel.size() == 0 ? generation : readHeader(channel, file);
+
+            if (first >= generation) { // Nouveau journal (ou apprentissage repris avant son début)
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC);
+                header.putInt(VERSION);
+                GenomeCodec.writeHeader(header);
+                header.putInt(generation);
+                header.flip();
+                channel.truncate(0);
+                index.truncate(0);
+                writeAt(channel, header, 0);
+                position = HEADER_SIZE;
+            } else {
+                long kept = generation - first; // Enregistrements gardés
+
+                if (index.size() / 8 < kept) {
+                    throw new IOException("Le journal " + file + " s'arrête avant la génération " + generation);
+                }
+
+                position = end(kept);
+                channel.truncate(position);
+                index.truncate(8 * kept);
+            }
+        } catch (IOException e) {
+            channel.close();
+            index.close();
+            throw e;
+        }
+
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "GenerationJournal");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static Path indexFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".idx");
+    }
+
+    /*
+     * Ajoute l'enregistrement de la génération : l'état des espèces, la durée
+     * des phases et le champion sont encodés tout de suite, puis écrits en
+     * arrière-plan.
+     */
+    public void append(int generation, List<Specie> species, long[] phases, ANN champion) {
+        int capacity = 12 + 32 * species.size() + 8 * PHASES.length + 16 + (champion != null ? GenomeCodec.maxEncodedSize(champion) : 0);
+        ByteBuffer record = free.poll();
+
+        if (record == null || record.capacity() < capacity) {
+            record = ByteBuffer.allocate(Math.max(capacity, 1 << 10));
+        }
+
+        record.clear();
+        record.putInt(0); // Taille, écrite à la fin
+        record.putInt(generation);
+        record.putInt(species.size());
+
+        for (Specie specie : species) {
+            List<ANN> anns = specie.getANNs();
+            double best = 0;
+            double sum = 0;
+
+            for (ANN ann : anns) {
+                best = Math.max(best, ann.fit);
+                sum += ann.fit;
+            }
+
+            ANN representative = anns.isEmpty() ? null : specie.getFirstANN();
+
+            record.putInt(specie.getSpecieNumber());
+            record.putInt(anns.size());
+            record.putDouble(best);
+            record.putDouble(anns.isEmpty() ? 0 : sum / anns.size());
+            record.putLong(representative != null ? representative.id : -1);
+        }
+
+        for (int i = 0; i < PHASES.length; i++) {
+            record.putLong(phases[i]);
+        }
+
+        record.putLong(champion != null ? champion.id : -1);
+        record.putDouble(champion != null ? champion.fit : 0);
+
+        if (champion != null) {
+            GenomeCodec.encode(champion, record);
+        }
+
+        record.putInt(0, record.position() - 4);
+        record.flip();
+
+        ByteBuffer encoded = record;
+        pending = writer.submit(() -> {
+            try {
+                buffer(encoded);
+            } catch (IOException e) {
+                fail(e);
+            }
+
+            free.offer(encoded);
+        });
+    }
+
+    // Écrit tout ce qui est en attente et le force sur le disque, puis attend la fin de l'écriture
+    public void flush() throws IOException {
+        pending = writer.submit(() -> {
+            try {
+                drain();
+                channel.force(false);
+                index.force(false);
+            } catch (IOException e) {
+                fail(e);
+            }
+        });
+        await();
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Écrit tout ce qui est en attente puis ferme le journal
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            writer.shutdown();
+            channel.close();
+            index.close();
+        }
+    }
+
+    private void await() {
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void fail(IOException e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+
+    // Ajoute l'enregistrement aux blocs en attente (thread d'écriture)
+    private void buffer(ByteBuffer record) throws IOException {
+        if (data.remaining() < record.remaining() || offsets.remaining() < 8) {
+            drain();
+        }
+
+        offsets.putLong(position);
+        position += record.remaining();
+
+        if (data.remaining() < record.remaining()) { // Enregistrement plus grand qu'un bloc
+            writeAt(channel, record, position - record.remaining());
+        } else {
+            data.put(record);
+        }
+    }
+
+    // Écrit les blocs en attente, le journal avant l'index (thread d'écriture)
+    private void drain() throws IOException {
+        data.flip();
+        writeAt(channel, data, position - data.remaining());
+        data.clear();
+
+        offsets.flip();
+        writeAt(index, offsets, index.size());
+        offsets.clear();
+    }
+
+    // Fin de l'enregistrement count - 1 d'après l'index (fin de l'en-tête s'il n'y en a aucun)
+    private long end(long count) throws IOException {
+        if (count == 0) {
+            return HEADER_SIZE;
+        }
+
+        ByteBuffer offset = ByteBuffer.allocate(8);
+        readAt(index, offset, 8 * (count - 1));
+        long start = offset.getLong(0);
+
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readAt(channel, length, start);
+
+        return start + 4 + length.getInt(0);
+    }
+
+    private static int readHeader(FileChannel channel, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readAt(channel, header, 0);
+
+        try {
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Ce n'est pas un journal d'apprentissage : " + file);
+            }
+
+            int version = header.getInt();
+
+            if (version != VERSION) {
+                throw new IOException("Version " + version + " non supportée (version actuelle : " + VERSION + ")");
+            }
+
+            GenomeCodec.readHeader(header);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Journal invalide : " + file, e);
+        }
+
+        return header.getInt();
+    }
+
+    private static void writeAt(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readAt(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+
+            if (read < 0) {
+                throw new IOException("Fin du journal inattendue");
+            }
+
+            position += read;
+        }
+
+        buffer.flip();
+    }
+
+    /*
+     * Enregistrement d'une génération. Le champion n'est décodé que si on le
+     * demande : parcourir les statistiques d'un long journal reste rapide.
+     */
+    public static class Record {
+        private final int generation;
+        private final int[] specieNumbers;
+        private final int[] sizes;
+        private final double[] bestFits;
+        private final double[] meanFits;
+        private final long[] representatives;
+        private final long[] phases;
+        private final long championId;
+        private final double championFit;
+        private final ByteBuffer champion; // Génome encodé, vide s'il n'y a pas de champion
+
+        private Record(ByteBuffer buffer) {
+            generation = buffer.getInt();
+            int nbSpecies = buffer.getInt();
+
+            if (nbSpecies < 0 || nbSpecies > buffer.remaining() / 32) {
+                throw new IllegalArgumentException("Nombre d'espèces invalide : " + nbSpecies);
+            }
+
+            specieNumbers = new int[nbSpecies];
+            sizes = new int[nbSpecies];
+            bestFits = new double[nbSpecies];
+            meanFits = new double[nbSpecies];
+            representatives = new long[nbSpecies];
+
+            for (int i = 0; i < nbSpecies; i++) {
+                specieNumbers[i] = buffer.getInt();
+                sizes[i] = buffer.getInt();
+                bestFits[i] = buffer.getDouble();
+                meanFits[i] = buffer.getDouble();
+                representatives[i] = buffer.getLong();
+            }
+
+            phases = new long[PHASES.length];
+
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] = buffer.getLong();
+            }
+
+            championId = buffer.getLong();
+            championFit = buffer.getDouble();
+            champion = buffer.slice();
+        }
+
+        public int getGeneration() {
+            return generation;
+        }
+
+        public int getNbSpecies() {
+            return sizes.length;
+        }
+
+        public int getSpecieNumber(int i) {
+            return specieNumbers[i];
+        }
+
+        public int getSize(int i) {
+            return sizes[i];
+        }
+
+        public double getBestFit(int i) {
+            return bestFits[i];
+        }
+
+        public double getMeanFit(int i) {
+            return meanFits[i];
+        }
+
+        // N° du représentant de l'espèce i (-1 si l'espèce est vide)
+        public long getRepresentative(int i) {
+            return representatives[i];
+        }
+
+        // Durée d'une phase (EVALUATION, SELECTION...) en ns
+        public long getPhase(int phase) {
+            return phases[phase];
+        }
+
+        public long getChampionId() {
+            return championId;
+        }
+
+        public double getChampionFit() {
+            return championFit;
+        }
+
+        // Décode le champion (null s'il n'y en avait pas), avec son n° et son fit
+        public ANN getChampion() {
+            if (!champion.hasRemaining()) {
+                return null;
+            }
+
+            ANN ann = GenomeCodec.decode(champion.duplicate());
+            ann.id = championId;
+            ann.fit = championFit;
+
+            return ann;
+        }
+
+        @Override
+        public String toString() {
+            return "(Génération " + generation + ", Nbre espèces : " + sizes.length + ", Champion : " + championId + ", Fit : " + championFit + " )";
+        }
+    }
+
+    /*
+     * Lecture d'un journal, enregistrement après enregistrement (next) ou en
+     * allant directement à une génération (seek, read). La lecture se fait par
+     * blocs, seul l'index est lu pour aller à une génération.
+     */
+    public static class Reader implements AutoCloseable {
+        private final FileChannel channel;
+        private final FileChannel index;
+        private final int firstGeneration;
+        private final long count; // Nombre d'enregistrements complets
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE); // Bloc lu, en lecture
+        private long position; // Position dans le journal de la fin du bloc lu
+        private long next; // N° (à partir de 0) du prochain enregistrement lu par next
+
+        public Reader(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+
+            try {
+                firstGeneration = readHeader(channel, file);
+                index = Files.exists(indexFile(file)) ? FileChannel.open(indexFile(file), StandardOpenOption.READ) : null;
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+
+            count = index != null ? completeRecords() : 0;
+            position = HEADER_SIZE;
+            buffer.limit(0);
+        }
+
+        public int getFirstGeneration() {
+            return firstGeneration;
+        }
+
+        // Nombre d'enregistrements accessibles par seek (ceux de l'index dont l'écriture est complète)
+        public long size() {
+            return count;
+        }
+
+        // Se placer sur l'enregistrement de la génération, next le lira
+        public void seek(int generation) throws IOException {
+            long i = (long) generation - firstGeneration;
+
+            if (i < 0 || i >= count) {
+                throw new IllegalArgumentException("Génération " + generation + " absente du journal (" + firstGeneration + " à " + (firstGeneration + count - 1) + ")");
+            }
+
+            ByteBuffer offset = ByteBuffer.allocate(8);
+            readAt(index, offset, 8 * i);
+            position = offset.getLong(0);
+            buffer.limit(0);
+            next = i;
+        }
+
+        // Lit l'enregistrement de la génération
+        public Record read(int generation) throws IOException {
+            seek(generation);
+
+            return next();
+        }
+
+        /*
+         * Lit l'enregistrement suivant, ou retourne null à la fin du journal. Sans
+         * index (ou après la fin de l'index), on lit le journal jusqu'au dernier
+         * enregistrement complet.
+         */
+        public Record next() throws IOException {
+            if (!fill(4)) {
+                return null;
+            }
+
+            int length = buffer.getInt(buffer.position());
+
+            if (length < 0 || !fill(4 + length)) {
+                return null; // Dernier enregistrement incomplet (écriture interrompue)
+            }
+
+            buffer.position(buffer.position() + 4);
+            ByteBuffer record = buffer.slice();
+            record.limit(length);
+            buffer.position(buffer.position() + length);
+            next++;
+
+            try {
+                return new Record(copy(record));
+            } catch (IllegalArgumentException | BufferUnderflowException e) {
+                throw new IOException("Enregistrement " + (next - 1) + " invalide", e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+
+            if (index != null) {
+                index.close();
+            }
+        }
+
+        // Enregistrements de l'index qui sont entièrement dans le journal
+        private long completeRecords() throws IOException {
+            long rslt = index.size() / 8;
+            ByteBuffer offset = ByteBuffer.allocate(8);
+            ByteBuffer length = ByteBuffer.allocate(4);
+
+            while (rslt > 0) {
+                offset.clear();
+                readAt(index, offset, 8 * (rslt - 1));
+                long start = offset.getLong(0);
+
+                if (start + 4 <= channel.size()) {
+                    length.clear();
+                    readAt(channel, length, start);
+
+                    if (start + 4 + length.getInt(0) <= channel.size()) {
+                        break;
+                    }
+                }
+
+                rslt--;
+            }
+
+            return rslt;
+        }
+
+        // S'assure que le bloc contient needed octets, retourne false si le journal est plus court
+        private boolean fill(int needed) throws IOException {
+            if (buffer.remaining() >= needed) {
+                return true;
+            }
+
+            if (buffer.capacity() < needed) {
+                ByteBuffer bigger = ByteBuffer.allocateDirect(needed);
+                bigger.put(buffer);
+                buffer = bigger;
+            } else {
+                buffer.compact();
+            }
+
+            while (buffer.position() < needed) {
+                int read = channel.read(buffer, position);
+
+                if (read <= 0) {
+                    buffer.flip();
+                    return false;
+                }
+
+                position += read;
+            }
+
+            buffer.flip();
+
+            return true;
+        }
+
+        // Copie de l'enregistrement : le bloc lu sera réutilisé
+        private static ByteBuffer copy(ByteBuffer record) {
+            ByteBuffer rslt = ByteBuffer.allocate(record.remaining());
+            rslt.put(record);
+            rslt.flip();
+
+            return rslt;
+        }
+    }
+}
@@ -10,33 +10,37 @@ import java.util.TreeMap;
  * génome. Va générer le réseau et l'évaluer.
  */
 
-public class ANN implements Comparable<ANN> {
+public class ANN {
     private final int nbMaxHiddenNodes;
     private final int nbInputs;
     private final int nbOutputs;
-    private final SortedMap<Integer, NodeGene> nodes = new TreeMap<>();
+    private volatile SortedMap<Integer, NodeGene> nodes; // Noeuds du réseau, générés à la première utilisation (lus par plusieurs threads pendant la reproduction)
+    private volatile NodeRoles roles; // Numéros des noeuds par rôle, calculés à la première utilisation (lus par plusieurs threads pendant la reproduction)
+    private Network network; // Réseau compilé, utilisé pour l'évaluation (généré à la première évaluation)
+    private Activation activation = Activation.Exact; // Fonction d'activation des noeuds
 
-    public ArrayList<ConnectionGene> conGeneList;
-    public ArrayList<Innovation> Innovations;
+    public ConnectionGenes genes; // Gènes de connexion, triés par n° d'innovation
     public float[] outputs;
     public double fit;
+    private boolean evaluated; // Si fit correspond aux gènes et à la fonction d'activation actuels
     public boolean first; // Si c'est le premier génome de la génération
+    public long id; // Numéro du génome dans l'apprentissage, donné par Neat (-1 = pas encore numéroté)
 
     /*
      * Constructeur de la classe ANN, prend en paramètre le nombre de noeuds cachés
-     * maximum, le nombre d'entrées et le nombre de sorties. Va générer le réseau de
-     * neurones.
+     * maximum, le nombre d'entrées et le nombre de sorties. Les gènes fournis
+     * appartiennent ensuite à l'ANN (ils ne sont pas copiés). Le réseau de neurones
+     * n'est généré qu'à sa première utilisation : beaucoup d'enfants ne servent
+     * qu'aux calculs de distance ou sont retirés avant.
      */
-    public ANN(ArrayList<ConnectionGene> con, int in, int out, int max) {
-        conGeneList = new ArrayList<>(con);
+    public ANN(ConnectionGenes genes, int in, int out, int max) {
+        this.genes = genes;
         nbInputs = in;
         nbOutputs = out;
         nbMaxHiddenNodes = max;
         fit = 0;
         first = false;
-
-        generateInnovations();
-        generateNetwork();
+        id = -1;
     }
 
     public int getNbInputs() {
@@ -51,11 +55,25 @@ public class ANN implements Comparable<ANN> {
         return nbMaxHiddenNodes;
     }
 
+    public Activation getActivation() {
+        return activation;
+    }
+
+    // Changer la fonction d'activation (par exemple l'exacte pour la validation finale)
+    public void setActivation(Activation activation) {
+        this.activation = activation;
+        evaluated = false; // Les sorties, et donc le fit, peuvent changer
+
+        if (network != null) {
+            network.setActivation(activation);
+        }
+    }
+
     // Retourne les noeuds d'entrées
     public ArrayList<NodeGene> getInputs() {
         ArrayList<NodeGene> rslt = new ArrayList<>();
 
-        for (Map.Entry<Integer, NodeGene> mapEntry : nodes.entrySet()) {
+        for (Map.Entry<Integer, NodeGene> mapEntry : getNodes().entrySet()) {
             if (mapEntry.getValue().getType() == NodeGene.NodeType.Input) {
                 rslt.add(mapEntry.getValue());
             }
@@ -68,7 +86,7 @@ public class ANN implements Comparable<ANN> {
     public ArrayList<NodeGene> getHiddens() {
         ArrayList<NodeGene> rslt = new ArrayList<>();
 
-        for (Map.Entry<Integer, NodeGene> mapEntry : nodes.entrySet()) {
+        for (Map.Entry<Integer, NodeGene> mapEntry : getNodes().entrySet()) {
             if (mapEntry.getValue().getType() == NodeGene.NodeType.Hidden) {
                 rslt.add(mapEntry.getValue());
             }
@@ -81,7 +99,7 @@ public class ANN implements Comparable<ANN> {
     public ArrayList<Integer> getHiddensIndexs() {
         ArrayList<Integer> rslt = new ArrayList<>();
 
-        for (Map.Entry<Integer, NodeGene> mapEntry : nodes.entrySet()) {
+        for (Map.Entry<Integer, NodeGene> mapEntry : getNodes().entrySet()) {
             if (mapEntry.getValue().getType() == NodeGene.NodeType.Hidden) {
                 rslt.add(mapEntry.getKey());
             }
@@ -94,7 +112,7 @@ public class ANN implements Comparable<ANN> {
     public ArrayList<NodeGene> getOutputs() {
         ArrayList<NodeGene> rslt = new ArrayList<>();
 
-        for (Map.Entry<Integer, NodeGene> mapEntry : nodes.entrySet()) {
+        for (Map.Entry<Integer, NodeGene> mapEntry : getNodes().entrySet()) {
             if (mapEntry.getValue().getType() == NodeGene.NodeType.Output) {
                 rslt.add(mapEntry.getValue());
             }
@@ -103,92 +121,180 @@ public class ANN implements Comparable<ANN> {
         return rslt;
     }
 
-    // Générer la liste d'Innovations
-    public void generateInnovations() {
-        Innovations = new ArrayList<>();
+    // Retourne les numéros des noeuds rangés par rôle (calculés une seule fois tant que les gènes ne changent pas)
+    public NodeRoles getRoles() {
+        NodeRoles rslt = roles;
+
+        if (rslt == null) {
+            rslt = new NodeRoles(genes, nbInputs, nbOutputs, nbInputs + nbMaxHiddenNodes);
+            roles = rslt;
+        }
+
+        return rslt;
+    }
+
+    // Retourne la liste d'Innovations (triée), construite à la demande à partir des gènes
+    public ArrayList<Innovation> getInnovations() {
+        ArrayList<Innovation> rslt = new ArrayList<>();
+
+        for (int i = 0; i < genes.size(); i++) {
+            rslt.add(new Innovation(genes.getInnovation(i), genes.getInto(i), genes.getOut(i)));
+        }
+
+        return rslt;
+    }
+
+    /*
+     * À appeler après une modification des gènes : le réseau sera régénéré à sa
+     * prochaine utilisation.
+     */
+    public void invalidate() {
+        nodes = null;
+        roles = null;
+        network = null;
+        evaluated = false;
+    }
+
+    // Si le fit est à jour : le génome n'a pas besoin d'être réévalué
+    public boolean isEvaluated() {
+        return evaluated;
+    }
+
+    // Enregistrer le fit calculé pour le génome dans son état actuel
+    public void setFit(double fit) {
+        this.fit = fit;
+        evaluated = true;
+    }
+
+    /*
+     * Retourne une copie du génome avec son fit, qui n'a donc pas à être réévaluée.
+     * Les gènes sont partagés jusqu'à ce que l'un des deux génomes les modifie. La
+     * copie n'est pas numérotée.
+     */
+    public ANN copy() {
+        ANN rslt = new ANN(new ConnectionGenes(genes), nbInputs, nbOutputs, nbMaxHiddenNodes);
+        rslt.setActivation(activation);
+
+        if (evaluated) {
+            rslt.setFit(fit);
+        }
+
+        return rslt;
+    }
+
+    // Retourne les noeuds du réseau, générés si besoin
+    private SortedMap<Integer, NodeGene> getNodes() {
+        SortedMap<Integer, NodeGene> rslt = nodes;
 
-        for (ConnectionGene connectionGene : conGeneList) {
-            Innovations.add(new Innovation(connectionGene.getInnovation(), connectionGene.getInto(), connectionGene.getOut()));
+        // Si plusieurs threads les génèrent en même temps, chacun utilise les siens (ils sont identiques)
+        if (rslt == null) {
+            rslt = generateNetwork();
+            nodes = rslt;
         }
 
-        Innovations.sort(Innovation::compareTo);
+        return rslt;
+    }
+
+    // Retourne le réseau compilé, généré si besoin
+    private Network getNetwork() {
+        if (network == null) {
+            network = new Network(genes, nbInputs, nbOutputs, nbInputs + nbMaxHiddenNodes, activation);
+        }
+
+        return network;
     }
 
     // Générer le réseau à partir des Connexions
-    public void generateNetwork() {
-        nodes.clear();
+    private SortedMap<Integer, NodeGene> generateNetwork() {
+        SortedMap<Integer, NodeGene> rslt = new TreeMap<>();
 
         // Input layer
         for (int i = 0; i < nbInputs; i++) {
-            nodes.put(i, new NodeGene(0, NodeGene.NodeType.Input, i)); // Inputs
+            rslt.put(i, new NodeGene(0, NodeGene.NodeType.Input, i)); // Inputs
         }
 
         // Input supplémentaire biais, qui sera toujours à 1
-        nodes.put(nbInputs, new NodeGene(1, NodeGene.NodeType.Input, nbInputs)); // Bias
+        rslt.put(nbInputs, new NodeGene(1, NodeGene.NodeType.Input, nbInputs)); // Bias
 
         // Output layer
         for (int i = nbInputs + nbMaxHiddenNodes; i < nbInputs + nbMaxHiddenNodes + nbOutputs; i++) {
-            nodes.put(i, new NodeGene(0, NodeGene.NodeType.Output, i));
+            rslt.put(i, new NodeGene(0, NodeGene.NodeType.Output, i));
         }
 
         // Hidden layer
-        for (ConnectionGene con : conGeneList) {
-            if (!nodes.containsKey(con.getInto())) {
-                nodes.put(con.getInto(), new NodeGene(0, NodeGene.NodeType.Hidden, con.getInto()));
+        for (int i = 0; i < genes.size(); i++) {
+            if (!rslt.containsKey(genes.getInto(i))) {
+                rslt.put(genes.getInto(i), new NodeGene(0, NodeGene.NodeType.Hidden, genes.getInto(i)));
             }
 
-            if (!nodes.containsKey(con.getOut())) {
-                nodes.put(con.getOut(), new NodeGene(0, NodeGene.NodeType.Hidden, con.getOut()));
+            if (!rslt.containsKey(genes.getOut(i))) {
+                rslt.put(genes.getOut(i), new NodeGene(0, NodeGene.NodeType.Hidden, genes.getOut(i)));
             }
 
-            nodes.get(con.getOut()).getIncomingCon().add(con);
+            rslt.get(genes.getOut(i)).getIncomingCon().add(genes.get(i));
         }
+
+        return rslt;
     }
 
     // Évaluer le réseau une fois qu'il a fini de converger
     public float[] evaluateNetwork(float[] inputs) {
-        float[] output = new float[nbOutputs];
+        return evaluateNetwork(inputs, new float[nbOutputs]);
+    }
 
-        for (int i = 0; i < nbInputs; i++) {
-            nodes.get(i).setValue(inputs[i]);
-        }
+    // Évaluer le réseau en écrivant les sorties dans le tableau fourni (pas d'allocation)
+    public float[] evaluateNetwork(float[] inputs, float[] output) {
+        getNetwork().evaluate(inputs, output);
 
-        for (Map.Entry<Integer, NodeGene> mapEntry : nodes.entrySet()) {
-            float sum = 0;
-            int key = mapEntry.getKey();
+        outputs = output;
+        return output;
+    }
 
-            NodeGene node = mapEntry.getValue();
+    /*
+     * Générer une classe spécialisée pour ce réseau, afin d'accélérer les
+     * évaluations suivantes (utilisé pour les meilleurs génomes)
+     */
+    public boolean specialise() {
+        return getNetwork().specialise();
+    }
 
-            if (key > nbInputs) {
-                for (ConnectionGene conn : node.getIncomingCon()) {
-                    if (conn.isEnabled()) {
-                        sum += nodes.get(conn.getInto()).getValue() * conn.getWeight();
-                    }
-                }
-                node.setValue(sigmoid(sum));
-            }
-        }
+    // État du réseau (valeurs des noeuds conservées d'une évaluation à l'autre), null s'il n'a jamais été évalué
+    public float[] getState() {
+        return network != null ? network.getValues() : null;
+    }
 
-        for (int i = 0; i < nbOutputs; i++) {
-            output[i] = nodes.get(nbInputs + nbMaxHiddenNodes + i).getValue();
-        }
+    // Remet un état obtenu avec getState, pour reprendre les évaluations là où elles en étaient
+    public void setState(float[] state) {
+        getNetwork().setValues(state);
+    }
 
-        outputs = output;
-        return output;
+    /*
+     * Oublie l'état du réseau : un réseau avec boucle donne alors les mêmes sorties
+     * pour les mêmes entrées, quelles que soient les évaluations précédentes
+     */
+    public void resetState() {
+        if (network != null) {
+            network.reset();
+        }
     }
 
-    // Fonction d'activation sigmoide, afin d'avoir le résultat entre 0 et 1
-    private float sigmoid(float x) {
-        return (float) (1 / (1 + Math.exp(-4.9 * x)));
+    public boolean isSpecialised() {
+        return network != null && network.isSpecialised();
     }
 
-    @Override
-    public int compareTo(ANN compare) {
-        return (int) (compare.fit - this.fit); // Tri descendant
+    /*
+     * Évaluer un lot d'échantillons en un seul passage dans le réseau. Les entrées
+     * (nbSamples x nbInputs) et les sorties (nbSamples x nbOutputs) sont rangées
+     * selon layout.
+     */
+    public float[] evaluateBatch(float[] inputs, int nbSamples, Network.Layout layout, float[] output) {
+        getNetwork().evaluateBatch(inputs, nbSamples, layout, output);
+
+        return output;
     }
 
     @Override
     public String toString() {
-        return "(ANN Fit : " + fit + ", Nbre noeuds : " + nodes.size() + ", Nbre connexions : " + conGeneList.size() + " )";
+        return "(ANN Fit : " + fit + ", Nbre noeuds : " + getRoles().getNbNodes() + ", Nbre connexions : " + genes.size() + " )";
     }
 }
@@ -0,0 +1,148 @@
+package Genome;
+
+/*
+ * Fonctions d'activation des noeuds d'un ANN. Ce sont toutes des versions de la
+ * sigmoide 1 / (1 + e^(-4.9x)), plus ou moins approchées : chacune déclare son
+ * erreur maximale par rapport à la sigmoide exacte. On peut ainsi utiliser une
+ * fonction moins chère pendant l'évolution et l'exacte pour la validation finale.
+ */
+public enum Activation {
+    // Sigmoide exacte, calculée en double avec Math.exp
+    Exact(0) {
+        @Override
+        public float apply(float x) {
+            return exact(x);
+        }
+
+        @Override
+        void apply(float[] sums, float[] m, int row, int length) {
+            for (int s = 0; s < length; s++) {
+                m[row + s] = exact(sums[s]);
+            }
+        }
+    },
+
+    // Approximation linéaire par morceaux (PLAN), 4 segments symétriques
+    PiecewiseLinear(0.019) {
+        @Override
+        public float apply(float x) {
+            return piecewiseLinear(x);
+        }
+
+        @Override
+        void apply(float[] sums, float[] m, int row, int length) {
+            for (int s = 0; s < length; s++) {
+                m[row + s] = piecewiseLinear(sums[s]);
+            }
+        }
+    },
+
+    // Approximation rationnelle de tanh (Padé), sans branchement
+    Rational(0.012) {
+        @Override
+        public float apply(float x) {
+            return rational(x);
+        }
+
+        @Override
+        void apply(float[] sums, float[] m, int row, int length) {
+            for (int s = 0; s < length; s++) {
+                m[row + s] = rational(sums[s]);
+            }
+        }
+    },
+
+    // Table précalculée avec interpolation linéaire entre deux points
+    LookupTable(0.000002) {
+        @Override
+        public float apply(float x) {
+            return lookupTable(x);
+        }
+
+        @Override
+        void apply(float[] sums, float[] m, int row, int length) {
+            for (int s = 0; s < length; s++) {
+                m[row + s] = lookupTable(sums[s]);
+            }
+        }
+    };
+
+    private static final int TABLE_SIZE = 4096; // Nombre d'intervalles de la table
+    private static final float TABLE_MIN = -4; // Au-delà de ±4 la sigmoide vaut 0 ou 1 en float
+    private static final float TABLE_MAX = 4;
+    private static final float TABLE_SCALE = TABLE_SIZE / (TABLE_MAX - TABLE_MIN);
+    private static final float[] TABLE = new float[TABLE_SIZE + 1];
+
+    static {
+        for (int i = 0; i <= TABLE_SIZE; i++) {
+            TABLE[i] = exact(TABLE_MIN + i / TABLE_SCALE);
+        }
+    }
+
+    private final double maxError;
+
+    /*
+     * Constructeur de l'activation, prend en paramètre l'erreur maximale par rapport
+     * à la sigmoide exacte.
+     */
+    Activation(double maxError) {
+        this.maxError = maxError;
+    }
+
+    // Erreur absolue maximale commise par rapport à la sigmoide exacte
+    public double getMaxError() {
+        return maxError;
+    }
+
+    // Applique la fonction d'activation à une somme pondérée
+    public abstract float apply(float x);
+
+    // Applique la fonction d'activation aux sommes d'une tuile et range le résultat dans la ligne du noeud
+    abstract void apply(float[] sums, float[] m, int row, int length);
+
+    private static float exact(float x) {
+        return (float) (1 / (1 + Math.exp(-4.9 * x)));
+    }
+
+    private static float piecewiseLinear(float x) {
+        float y = Math.abs(4.9f * x);
+        float rslt;
+
+        if (y >= 5) {
+            rslt = 1;
+        } else if (y >= 2.375f) {
+            rslt = 0.03125f * y + 0.84375f;
+        } else if (y >= 1) {
+            rslt = 0.125f * y + 0.625f;
+        } else {
+            rslt = 0.25f * y + 0.5f;
+        }
+
+        return x < 0 ? 1 - rslt : rslt;
+    }
+
+    // sigmoide(4.9x) = (1 + tanh(2.45x)) / 2, avec tanh(z) ~ z (27 + z²) / (27 + 9z²) sur [-3, 3]
+    private static float rational(float x) {
+        float z = Math.max(-3, Math.min(3, 2.45f * x));
+        float z2 = z * z;
+
+        return 0.5f + 0.5f * (z * (27 + z2) / (27 + 9 * z2));
+    }
+
+    private static float lookupTable(float x) {
+        float position = (x - TABLE_MIN) * TABLE_SCALE;
+
+        if (position <= 0) {
+            return TABLE[0];
+        }
+
+        if (position >= TABLE_SIZE) {
+            return TABLE[TABLE_SIZE];
+        }
+
+        int i = (int) position;
+        float fraction = position - i;
+
+        return TABLE[i] + (TABLE[i + 1] - TABLE[i]) * fraction;
+    }
+}
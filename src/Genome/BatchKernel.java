@@ -0,0 +1,66 @@
+package Genome;
+
+/*
+ * Boucles internes de l'évaluation par lot (Network.evaluateBatch) : ajout de la
+ * contribution d'une connexion aux sommes d'une tuile d'échantillons, puis
+ * activation de ces sommes.
+ *
+ * Par défaut les boucles sont scalaires. Si la classe Genome.VectorKernel
+ * (dossier vector, compilée à part car elle utilise jdk.incubator.vector, Java
+ * 16 et plus) est dans le classpath et que le module est chargé
+ * (--add-modules jdk.incubator.vector), elle est utilisée à la place. Sinon
+ * (Java 8, module absent) on garde les boucles scalaires.
+ */
+abstract class BatchKernel {
+    static final BatchKernel INSTANCE = load(); // Noyau utilisé par tous les réseaux
+
+    // Ajoute m[src + s] * weight à sums[s], pour s de 0 à length
+    abstract void accumulate(float[] sums, float[] m, int src, float weight, int length);
+
+    // Range dans m[row + s] l'activation de sums[s], pour s de 0 à length
+    abstract void activate(Activation activation, float[] sums, float[] m, int row, int length);
+
+    // Nom du noyau, pour l'afficher
+    abstract String getName();
+
+    // Si ce sont les boucles scalaires (l'API Vector n'est pas disponible)
+    boolean isScalar() {
+        return this instanceof Scalar;
+    }
+
+    private static BatchKernel load() {
+        try {
+            BatchKernel vector = (BatchKernel) Class.forName("Genome.VectorKernel").getDeclaredConstructor().newInstance();
+
+            // Un premier appel, pour que les classes du module soient vraiment liées
+            vector.accumulate(new float[1], new float[1], 0, 1, 1);
+
+            return vector;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return new Scalar(); // Classe absente, module non chargé ou Java trop ancien
+        }
+    }
+
+    /*
+     * Boucles scalaires, sans branchement sur des tableaux distincts et contigus :
+     * le JIT peut les vectoriser lui-même (sauf la sigmoide exacte et la table).
+     */
+    static final class Scalar extends BatchKernel {
+        @Override
+        void accumulate(float[] sums, float[] m, int src, float weight, int length) {
+            for (int s = 0; s < length; s++) {
+                sums[s] += m[src + s] * weight;
+            }
+        }
+
+        @Override
+        void activate(Activation activation, float[] sums, float[] m, int row, int length) {
+            activation.apply(sums, m, row, length);
+        }
+
+        @Override
+        String getName() {
+            return "scalaire";
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package Genome;
+
+/*
+ * Interface implémentée par les classes générées par NetworkCompiler : un réseau
+ * dont la topologie et les poids sont écrits en dur dans le code.
+ */
+public interface CompiledNetwork {
+
+    /*
+     * Évalue un échantillon dont les entrées sont lues à partir de inOffset tous les
+     * inStride éléments, et les sorties écrites de la même façon.
+     */
+    void evaluate(float[] inputs, int inOffset, int inStride, float[] output, int outOffset, int outStride);
+}
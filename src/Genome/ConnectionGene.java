@@ -4,14 +4,15 @@ package Genome;
 /*
  * Classe étant la connexion entre des noeuds, contenant son entrée et sortie, le
  * n° d'innovation, son poids et s'il est activé ou non. Est un gène du génome
- * avec NodeGene.
+ * avec NodeGene. Un gène ne change pas une fois créé, on peut donc le partager
+ * sans risque (les modifications se font dans ConnectionGenes).
  */
 public class ConnectionGene {
     private final int into;
     private final int out;
     private final int innovation;
-    private float weight;
-    private boolean enabled;
+    private final float weight;
+    private final boolean enabled;
 
     /*
      * Constructeur de la classe ConnectionGene, prend en paramètre l'entrée, la
@@ -42,23 +43,10 @@ public class ConnectionGene {
         return weight;
     }
 
-    public void setWeight(float weight) {
-        this.weight = weight;
-    }
-
     public boolean isEnabled() {
         return enabled;
     }
 
-    public void setEnabled(boolean enabled) {
-        this.enabled = enabled;
-    }
-
-    public boolean switchEnabled() {
-        enabled = !enabled;
-        return enabled;
-    }
-
     @Override
     public String toString() {
         return "[" + into + ", " + out + ", " + innovation + ", " + weight + ", " + enabled + "]";
@@ -0,0 +1,286 @@
+package Genome;
+
+import java.util.Arrays;
+
+/*
+ * Classe contenant les gènes de connexion d'un génome, rangés par colonnes dans
+ * des tableaux primitifs (entrée, sortie, n° d'innovation, poids, activé) plutôt
+ * qu'en une liste d'objets ConnectionGene. Les gènes sont toujours triés par n°
+ * d'innovation (ascendant, les doublons gardent leur ordre d'ajout).
+ *
+ * Une copie partage les colonnes de l'original : une colonne partagée n'est
+ * copiée qu'au moment où l'un des deux génomes la modifie (changer un poids ne
+ * copie que les poids, activer un gène que les bits d'activation).
+ */
+public class ConnectionGenes {
+    private static final int INTO = 1; // Bits des colonnes, pour savoir lesquelles sont partagées
+    private static final int OUT = 2;
+    private static final int INNOVATION = 4;
+    private static final int WEIGHT = 8;
+    private static final int ENABLED = 16;
+    private static final int ALL = INTO | OUT | INNOVATION | WEIGHT | ENABLED;
+
+    private int[] into;
+    private int[] out;
+    private int[] innovation;
+    private float[] weight;
+    private long[] enabled; // Un bit par gène
+    private int size;
+    private int shared; // Colonnes partagées avec un autre génome, à copier avant de les modifier
+
+    public ConnectionGenes() {
+        this(8);
+    }
+
+    /*
+     * Constructeur de la classe ConnectionGenes, prend en paramètre le nombre de
+     * gènes prévus (les tableaux s'agrandissent si besoin).
+     */
+    public ConnectionGenes(int capacity) {
+        capacity = Math.max(capacity, 1);
+        into = new int[capacity];
+        out = new int[capacity];
+        innovation = new int[capacity];
+        weight = new float[capacity];
+        enabled = new long[(capacity + 63) >>> 6];
+    }
+
+    /*
+     * Constructeur à partir de colonnes déjà remplies (gènes triés par n°
+     * d'innovation, tableaux d'au moins 1 case), qui appartiennent ensuite aux
+     * gènes. Utilisé par GenomeCodec et PopulationFile pour lire sans copie.
+     */
+    ConnectionGenes(int[] into, int[] out, int[] innovation, float[] weight, long[] enabled, int size) {
+        this.into = into;
+        this.out = out;
+        this.innovation = innovation;
+        this.weight = weight;
+        this.enabled = enabled;
+        this.size = size;
+    }
+
+    /*
+     * Constructeur de copie, sans rien copier : les colonnes sont partagées par les 2
+     * génomes jusqu'à ce que l'un d'eux les modifie.
+     */
+    public ConnectionGenes(ConnectionGenes genes) {
+        into = genes.into;
+        out = genes.out;
+        innovation = genes.innovation;
+        weight = genes.weight;
+        enabled = genes.enabled;
+        size = genes.size;
+        shared = ALL;
+        genes.shared = ALL;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Colonnes brutes (size premières cases), en lecture seule : pour les copier d'un bloc
+    int[] intoColumn() {
+        return into;
+    }
+
+    int[] outColumn() {
+        return out;
+    }
+
+    int[] innovationColumn() {
+        return innovation;
+    }
+
+    float[] weightColumn() {
+        return weight;
+    }
+
+    // Un bit par gène, (size + 63) / 64 premières cases
+    long[] enabledColumn() {
+        return enabled;
+    }
+
+    public int getInto(int i) {
+        return into[i];
+    }
+
+    public int getOut(int i) {
+        return out[i];
+    }
+
+    public int getInnovation(int i) {
+        return innovation[i];
+    }
+
+    public float getWeight(int i) {
+        return weight[i];
+    }
+
+    public void setWeight(int i, float weight) {
+        own(WEIGHT);
+        this.weight[i] = weight;
+    }
+
+    public boolean isEnabled(int i) {
+        return (enabled[i >>> 6] & (1L << i)) != 0;
+    }
+
+    public void setEnabled(int i, boolean enabled) {
+        own(ENABLED);
+
+        if (enabled) {
+            this.enabled[i >>> 6] |= 1L << i;
+        } else {
+            this.enabled[i >>> 6] &= ~(1L << i);
+        }
+    }
+
+    public boolean switchEnabled(int i) {
+        own(ENABLED);
+        enabled[i >>> 6] ^= 1L << i;
+        return isEnabled(i);
+    }
+
+    // Retourne le plus grand n° d'innovation (le dernier gène), les gènes ne doivent pas être vides
+    public int maxInnovation() {
+        return innovation[size - 1];
+    }
+
+    // Vérifie si un gène possède ce n° d'innovation (recherche dichotomique)
+    public boolean containsInnovation(int inno) {
+        return Arrays.binarySearch(innovation, 0, size, inno) >= 0;
+    }
+
+    // Retourne l'index du gène reliant into à out, ou -1
+    public int indexOfConnection(int into, int out) {
+        for (int i = 0; i < size; i++) {
+            if (this.into[i] == into && this.out[i] == out) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /*
+     * Ajoute un gène à sa place selon son n° d'innovation (après ceux ayant le même
+     * n°) et retourne son index. L'ajout est direct si le n° est le plus grand.
+     */
+    public int add(int into, int out, int innovation, float weight, boolean enabled) {
+        if (size == this.into.length) {
+            grow();
+        } else {
+            own(ALL);
+        }
+
+        int index = size;
+
+        if (size > 0 && innovation < this.innovation[size - 1]) {
+            index = upperBound(innovation);
+
+            System.arraycopy(this.into, index, this.into, index + 1, size - index);
+            System.arraycopy(this.out, index, this.out, index + 1, size - index);
+            System.arraycopy(this.innovation, index, this.innovation, index + 1, size - index);
+            System.arraycopy(this.weight, index, this.weight, index + 1, size - index);
+
+            for (int i = size; i > index; i--) {
+                setEnabled(i, isEnabled(i - 1));
+            }
+        }
+
+        this.into[index] = into;
+        this.out[index] = out;
+        this.innovation[index] = innovation;
+        this.weight[index] = weight;
+        setEnabled(index, enabled);
+        size++;
+
+        return index;
+    }
+
+    // Ajoute une copie du gène i d'un autre génome
+    public int add(ConnectionGenes genes, int i) {
+        return add(genes.into[i], genes.out[i], genes.innovation[i], genes.weight[i], genes.isEnabled(i));
+    }
+
+    // Retourne une copie du gène i sous forme d'objet (la modifier ne change pas le génome)
+    public ConnectionGene get(int i) {
+        return new ConnectionGene(into[i], out[i], innovation[i], weight[i], isEnabled(i));
+    }
+
+    // Index du premier gène ayant un n° d'innovation strictement plus grand
+    private int upperBound(int inno) {
+        int low = 0;
+        int high = size;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (innovation[middle] <= inno) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    // Agrandit les tableaux, qui sont alors tous copiés (plus aucune colonne n'est partagée)
+    private void grow() {
+        int capacity = into.length * 2;
+
+        into = Arrays.copyOf(into, capacity);
+        out = Arrays.copyOf(out, capacity);
+        innovation = Arrays.copyOf(innovation, capacity);
+        weight = Arrays.copyOf(weight, capacity);
+        enabled = Arrays.copyOf(enabled, (capacity + 63) >>> 6);
+        shared = 0;
+    }
+
+    // Copie les colonnes demandées qui sont encore partagées, avant de les modifier
+    private void own(int columns) {
+        int copy = shared & columns;
+
+        if (copy == 0) {
+            return;
+        }
+
+        if ((copy & INTO) != 0) {
+            into = into.clone();
+        }
+
+        if ((copy & OUT) != 0) {
+            out = out.clone();
+        }
+
+        if ((copy & INNOVATION) != 0) {
+            innovation = innovation.clone();
+        }
+
+        if ((copy & WEIGHT) != 0) {
+            weight = weight.clone();
+        }
+
+        if ((copy & ENABLED) != 0) {
+            enabled = enabled.clone();
+        }
+
+        shared &= ~copy;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder rslt = new StringBuilder("[");
+
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                rslt.append(", ");
+            }
+
+            rslt.append(get(i));
+        }
+
+        return rslt.append("]").toString();
+    }
+}
@@ -0,0 +1,297 @@
+package Genome;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Format binaire compact des génomes, pour les sauvegardes, l'envoi à d'autres
+ * processus et l'archivage des champions. Un flux commence par un en-tête
+ * (MAGIC puis VERSION), suivi des génomes. Un génome est écrit par colonnes :
+ *
+ *   entrées, sorties, noeuds cachés max (varint), activation (1 octet), nombre de gènes (varint)
+ *   n° d'innovation : écart avec le précédent (varint, les gènes sont triés)
+ *   entrées, puis sorties des connexions : écart avec la précédente (varint zigzag)
+ *   poids : float bruts (4 octets)
+ *   activé : 1 bit par gène, par octets
+ *
+ * Un varint prend 7 bits par octet, le bit de poids fort indiquant qu'un octet
+ * suit : les petits écarts tiennent sur 1 octet. Le décodage remplit
+ * directement les colonnes du génome, sans objets intermédiaires.
+ */
+public final class GenomeCodec {
+    public static final int MAGIC = 0x4e45474e; // "NEGN"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 5; // MAGIC (4 octets) et VERSION (1 octet)
+    private static final int CHANNEL_BUFFER_SIZE = 1 << 16; // Taille du tampon des lectures et écritures sur un canal
+
+    private GenomeCodec() {
+    }
+
+    // Écrit l'en-tête d'un flux de génomes
+    public static void writeHeader(ByteBuffer buffer) {
+        buffer.putInt(MAGIC);
+        buffer.put((byte) VERSION);
+    }
+
+    // Lit et vérifie l'en-tête d'un flux de génomes, retourne sa version
+    public static int readHeader(ByteBuffer buffer) {
+        int magic = buffer.getInt();
+        int version = buffer.get() & 0xff;
+
+        if (magic != MAGIC) {
+            throw new IllegalArgumentException("Ce n'est pas un flux de génomes (en-tête " + Integer.toHexString(magic) + ")");
+        }
+
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Version " + version + " non supportée (version actuelle : " + VERSION + ")");
+        }
+
+        return version;
+    }
+
+    // Taille maximale du génome encodé, pour prévoir le tampon
+    public static int maxEncodedSize(ANN ann) {
+        int size = ann.genes.size();
+
+        return 4 * 5 + 1 + size * (5 + 5 + 5 + 4) + (size + 7) / 8;
+    }
+
+    // Écrit le génome à la position du tampon (qui doit avoir maxEncodedSize octets de libres)
+    public static void encode(ANN ann, ByteBuffer buffer) {
+        ConnectionGenes genes = ann.genes;
+        int size = genes.size();
+
+        putVarint(buffer, ann.getNbInputs());
+        putVarint(buffer, ann.getNbOutputs());
+        putVarint(buffer, ann.getNbMaxHiddenNodes());
+        buffer.put((byte) ann.getActivation().ordinal());
+        putVarint(buffer, size);
+
+        for (int i = 0, previous = 0; i < size; i++) {
+            putVarint(buffer, genes.getInnovation(i) - previous);
+            previous = genes.getInnovation(i);
+        }
+
+        for (int i = 0, previous = 0; i < size; i++) {
+            putVarint(buffer, zigzag(genes.getInto(i) - previous));
+            previous = genes.getInto(i);
+        }
+
+        for (int i = 0, previous = 0; i < size; i++) {
+            putVarint(buffer, zigzag(genes.getOut(i) - previous));
+            previous = genes.getOut(i);
+        }
+
+        for (int i = 0; i < size; i++) {
+            buffer.putFloat(genes.getWeight(i));
+        }
+
+        for (int i = 0; i < size; i += 8) {
+            int bits = 0;
+
+            for (int j = i; j < Math.min(i + 8, size); j++) {
+                if (genes.isEnabled(j)) {
+                    bits |= 1 << (j - i);
+                }
+            }
+
+            buffer.put((byte) bits);
+        }
+    }
+
+    // Lit le génome à la position du tampon
+    public static ANN decode(ByteBuffer buffer) {
+        int nbInputs = getVarint(buffer);
+        int nbOutputs = getVarint(buffer);
+        int nbMaxHiddenNodes = getVarint(buffer);
+        int activation = buffer.get() & 0xff;
+        int size = getVarint(buffer);
+
+        // Chaque gène prend au moins 7 octets : on refuse un nombre de gènes impossible avant d'allouer
+        if (activation >= Activation.values().length || size < 0 || size > buffer.remaining() / 7) {
+            throw new IllegalArgumentException("Génome invalide (" + size + " gènes, activation " + activation + ")");
+        }
+
+        if (nbInputs < 0 || nbOutputs < 0 || nbMaxHiddenNodes < 0) {
+            throw new IllegalArgumentException("Génome invalide (" + nbInputs + " entrées, " + nbOutputs + " sorties, " + nbMaxHiddenNodes + " noeuds cachés)");
+        }
+
+        int capacity = Math.max(size, 1);
+        int[] into = new int[capacity];
+        int[] out = new int[capacity];
+        int[] innovation = new int[capacity];
+        float[] weight = new float[capacity];
+        long[] enabled = new long[(capacity + 63) >>> 6];
+
+        for (int i = 0, previous = 0; i < size; i++) {
+            int delta = getVarint(buffer);
+
+            // Les gènes sont triés par n° d'innovation : un écart négatif (ou un n° qui déborde) les désordonnerait
+            if (delta < 0 || previous + delta < previous) {
+                throw new IllegalArgumentException("Génome invalide (n° d'innovation du gène " + i + " non croissant)");
+            }
+
+            previous += delta;
+            innovation[i] = previous;
+        }
+
+        for (int i = 0, previous = 0; i < size; i++) {
+            previous += unzigzag(getVarint(buffer));
+            into[i] = previous;
+        }
+
+        for (int i = 0, previous = 0; i < size; i++) {
+            previous += unzigzag(getVarint(buffer));
+            out[i] = previous;
+        }
+
+        for (int i = 0; i < size; i++) {
+            weight[i] = buffer.getFloat();
+        }
+
+        for (int i = 0; i < size; i += 8) {
+            long bits = buffer.get() & 0xffL;
+            enabled[i >>> 6] |= bits << i; // i est un multiple de 8, l'octet ne déborde pas du long
+        }
+
+        ANN ann = new ANN(new ConnectionGenes(into, out, innovation, weight, enabled, size), nbInputs, nbOutputs, nbMaxHiddenNodes);
+        ann.setActivation(Activation.values()[activation]);
+
+        return ann;
+    }
+
+    /*
+     * Écrit les génomes sur le canal (un FileChannel par exemple), précédés de
+     * l'en-tête et de leur nombre, chacun précédé de sa taille en octets pour
+     * pouvoir le lire sans connaître la suite.
+     */
+    public static void write(WritableByteChannel channel, List<ANN> anns) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHANNEL_BUFFER_SIZE);
+
+        writeHeader(buffer);
+        buffer.putInt(anns.size());
+
+        for (ANN ann : anns) {
+            int needed = 4 + maxEncodedSize(ann);
+
+            if (buffer.remaining() < needed) {
+                flush(channel, buffer);
+
+                if (buffer.capacity() < needed) { // Génome plus grand que le tampon
+                    buffer = ByteBuffer.allocateDirect(needed);
+                }
+            }
+
+            int start = buffer.position();
+            buffer.position(start + 4);
+            encode(ann, buffer);
+            buffer.putInt(start, buffer.position() - start - 4);
+        }
+
+        flush(channel, buffer);
+    }
+
+    // Lit les génomes écrits par write
+    public static ArrayList<ANN> read(ReadableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHANNEL_BUFFER_SIZE);
+        buffer.limit(0); // Tampon en lecture, encore vide
+
+        buffer = fill(channel, buffer, HEADER_SIZE + 4);
+        readHeader(buffer);
+        int count = buffer.getInt();
+        ArrayList<ANN> anns = new ArrayList<>(Math.max(Math.min(count, 1 << 16), 0));
+
+        for (int i = 0; i < count; i++) {
+            buffer = fill(channel, buffer, 4);
+            int length = buffer.getInt();
+            buffer = fill(channel, buffer, length);
+
+            // Le génome est décodé dans une vue limitée à sa taille
+            ByteBuffer record = buffer.slice();
+            record.limit(length);
+            anns.add(decode(record));
+            buffer.position(buffer.position() + length);
+        }
+
+        return anns;
+    }
+
+    private static void flush(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        buffer.clear();
+    }
+
+    /*
+     * S'assure que le tampon (en lecture) contient au moins needed octets, en lisant
+     * la suite du canal. Retourne le tampon, remplacé par un plus grand si besoin.
+     */
+    private static ByteBuffer fill(ReadableByteChannel channel, ByteBuffer buffer, int needed) throws IOException {
+        if (needed < 0) {
+            throw new IllegalArgumentException("Taille de génome invalide : " + needed);
+        }
+
+        if (buffer.remaining() >= needed) {
+            return buffer;
+        }
+
+        if (buffer.capacity() < needed) {
+            ByteBuffer bigger = ByteBuffer.allocateDirect(needed);
+            bigger.put(buffer);
+            buffer = bigger;
+        } else {
+            buffer.compact();
+        }
+
+        while (buffer.position() < needed) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Fin du flux de génomes inattendue");
+            }
+        }
+
+        buffer.flip();
+
+        return buffer;
+    }
+
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+
+        buffer.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer buffer) {
+        int value = 0;
+
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = buffer.get();
+            value |= (b & 0x7f) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("Varint invalide");
+    }
+
+    // Range les petits nombres négatifs comme les petits positifs : 0, -1, 1, -2... deviennent 0, 1, 2, 3...
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,338 @@
+package Genome;
+
+import java.util.Arrays;
+
+/*
+ * Classe contenant le réseau compilé d'un ANN : les noeuds sont numérotés par
+ * ordre d'évaluation (ordre croissant de leurs numéros) et les connexions
+ * activées sont rangées à plat dans des tableaux primitifs. L'évaluation n'est
+ * alors qu'une boucle sur ces tableaux, sans Map ni objets intermédiaires.
+ */
+public class Network {
+    private static final int TILE = 256; // Nombre d'échantillons d'un lot traités ensemble, pour rester dans le cache
+    private static final int MIN_BATCH = 16; // En dessous, le lot est évalué échantillon par échantillon (plus rapide, voir bench/BatchBenchmark)
+    private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new); // Tableaux de travail de chaque thread
+
+    private final int nbInputs;
+    private final int nbOutputs;
+    private final int[] offsets; // Début des connexions entrantes de chaque noeud calculé (taille = nbre de noeuds calculés + 1)
+    private final int[] sources; // Index du noeud source de chaque connexion
+    private final float[] weights; // Poids de chaque connexion
+    private final int[] outputIndexs; // Index des noeuds de sortie
+    private final float[] values; // Valeur de chaque noeud, conservée d'une évaluation à l'autre comme dans NodeGene
+    private final boolean recurrent; // Si une connexion lit un noeud qui n'est pas encore calculé (boucle)
+    private Activation activation; // Fonction d'activation des noeuds calculés
+    private CompiledNetwork compiled; // Classe générée pour ce réseau (null si le réseau est interprété)
+
+    /*
+     * Constructeur de la classe Network, prend en paramètre les gènes de l'ANN, le
+     * nombre d'entrées, le nombre de sorties, le numéro du premier noeud de sortie et
+     * la fonction d'activation. Les connexions désactivées ne sont pas reprises.
+     */
+    public Network(ConnectionGenes genes, int nbInputs, int nbOutputs, int firstOutput, Activation activation) {
+        this.nbInputs = nbInputs;
+        this.nbOutputs = nbOutputs;
+        this.activation = activation;
+
+        // Numéros de tous les noeuds (entrées, biais, sorties et noeuds cités par les gènes), triés : c'est l'ordre d'évaluation
+        int[] ids = new int[nbInputs + 1 + nbOutputs + 2 * genes.size()];
+        int nbIds = 0;
+
+        for (int i = 0; i <= nbInputs; i++) {
+            ids[nbIds++] = i;
+        }
+
+        for (int i = 0; i < nbOutputs; i++) {
+            ids[nbIds++] = firstOutput + i;
+        }
+
+        for (int i = 0; i < genes.size(); i++) {
+            ids[nbIds++] = genes.getInto(i);
+            ids[nbIds++] = genes.getOut(i);
+        }
+
+        Arrays.sort(ids, 0, nbIds);
+
+        int nbNodes = 0;
+
+        for (int i = 0; i < nbIds; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) {
+                ids[nbNodes++] = ids[i];
+            }
+        }
+
+        values = new float[nbNodes];
+        values[nbInputs] = 1; // Biais, toujours à 1
+
+        // Nombre de connexions activées entrant dans chaque noeud calculé (ceux après le biais)
+        offsets = new int[nbNodes - nbInputs];
+        int[] destinations = new int[genes.size()];
+
+        for (int i = 0; i < genes.size(); i++) {
+            destinations[i] = Arrays.binarySearch(ids, 0, nbNodes, genes.getOut(i)) - nbInputs - 1;
+
+            if (genes.isEnabled(i) && destinations[i] >= 0) {
+                offsets[destinations[i] + 1]++;
+            }
+        }
+
+        for (int node = 1; node < offsets.length; node++) {
+            offsets[node] += offsets[node - 1];
+        }
+
+        sources = new int[offsets[offsets.length - 1]];
+        weights = new float[sources.length];
+
+        // Les connexions d'un noeud gardent l'ordre des gènes, c'est l'ordre de sommation
+        int[] cursors = Arrays.copyOf(offsets, offsets.length - 1);
+
+        for (int i = 0; i < genes.size(); i++) {
+            if (genes.isEnabled(i) && destinations[i] >= 0) {
+                int con = cursors[destinations[i]]++;
+                sources[con] = Arrays.binarySearch(ids, 0, nbNodes, genes.getInto(i));
+                weights[con] = genes.getWeight(i);
+            }
+        }
+
+        // Une connexion vers un noeud déjà passé lit la valeur de l'échantillon précédent
+        boolean loop = false;
+
+        for (int node = 0; node < offsets.length - 1 && !loop; node++) {
+            for (int con = offsets[node]; con < offsets[node + 1]; con++) {
+                if (sources[con] >= nbInputs + 1 + node) {
+                    loop = true;
+                    break;
+                }
+            }
+        }
+
+        recurrent = loop;
+
+        outputIndexs = new int[nbOutputs];
+
+        for (int i = 0; i < nbOutputs; i++) {
+            outputIndexs[i] = Arrays.binarySearch(ids, 0, nbNodes, firstOutput + i);
+        }
+    }
+
+    public int getNbInputs() {
+        return nbInputs;
+    }
+
+    public int getNbOutputs() {
+        return nbOutputs;
+    }
+
+    public int getNbNodes() {
+        return values.length;
+    }
+
+    // Copie des valeurs des noeuds, qui sont l'état d'un réseau récurrent
+    public float[] getValues() {
+        return values.clone();
+    }
+
+    // Remet des valeurs obtenues avec getValues (le réseau compilé les partage)
+    public void setValues(float[] values) {
+        if (values.length != this.values.length) {
+            throw new IllegalArgumentException(values.length + " valeurs pour " + this.values.length + " noeuds");
+        }
+
+        System.arraycopy(values, 0, this.values, 0, values.length);
+    }
+
+    // Remet les noeuds à 0 (biais à 1), comme un réseau qui vient d'être généré
+    public void reset() {
+        Arrays.fill(values, 0);
+        values[nbInputs] = 1;
+    }
+
+    public int getNbConnections() {
+        return sources.length;
+    }
+
+    public Activation getActivation() {
+        return activation;
+    }
+
+    public void setActivation(Activation activation) {
+        this.activation = activation;
+
+        // La fonction d'activation est écrite en dur dans la classe générée
+        if (compiled != null) {
+            specialise();
+        }
+    }
+
+    public boolean isSpecialised() {
+        return compiled != null;
+    }
+
+    /*
+     * Génère une classe spécialisée pour ce réseau (poids et topologie en dur),
+     * utilisée ensuite pour l'évaluation échantillon par échantillon. Retourne
+     * false si le réseau est trop grand, il reste alors interprété.
+     */
+    public boolean specialise() {
+        compiled = NetworkCompiler.compile(nbInputs, offsets, sources, weights, outputIndexs, values, activation);
+
+        return compiled != null;
+    }
+
+    public boolean isRecurrent() {
+        return recurrent;
+    }
+
+    /*
+     * Évalue le réseau et écrit le résultat dans output (de taille nbOutputs), sans
+     * aucune allocation.
+     */
+    public void evaluate(float[] inputs, float[] output) {
+        evaluate(inputs, 0, 1, output, 0, 1);
+    }
+
+    /*
+     * Évalue un échantillon dont les entrées sont lues à partir de inOffset tous les
+     * inStride éléments, et les sorties écrites de la même façon.
+     */
+    private void evaluate(float[] inputs, int inOffset, int inStride, float[] output, int outOffset, int outStride) {
+        if (compiled != null) {
+            compiled.evaluate(inputs, inOffset, inStride, output, outOffset, outStride);
+            return;
+        }
+
+        float[] v = values;
+
+        for (int i = 0; i < nbInputs; i++) {
+            v[i] = inputs[inOffset + i * inStride];
+        }
+
+        // Les noeuds calculés commencent juste après le biais
+        for (int node = 0, index = nbInputs + 1; index < v.length; node++, index++) {
+            float sum = 0;
+
+            for (int con = offsets[node]; con < offsets[node + 1]; con++) {
+                sum += v[sources[con]] * weights[con];
+            }
+
+            v[index] = activation.apply(sum);
+        }
+
+        for (int i = 0; i < nbOutputs; i++) {
+            output[outOffset + i * outStride] = v[outputIndexs[i]];
+        }
+    }
+
+    /*
+     * Évalue un lot de nbSamples échantillons. Les entrées (nbSamples x nbInputs) et
+     * les sorties (nbSamples x nbOutputs) sont rangées selon layout. Le réseau est
+     * parcouru une seule fois : chaque poids est chargé une fois pour tout le lot
+     * (un réseau spécialisé utilise plutôt sa classe générée, échantillon par
+     * échantillon).
+     * Le résultat est identique à nbSamples appels successifs à evaluate.
+     */
+    public void evaluateBatch(float[] inputs, int nbSamples, Layout layout, float[] output) {
+        if (nbSamples == 0) {
+            return;
+        }
+
+        boolean rowMajor = layout == Layout.RowMajor;
+
+        /*
+         * Échantillon par échantillon : un réseau avec boucle dépend de l'échantillon
+         * précédent (on ne peut pas calculer noeud par noeud), un petit lot va plus
+         * vite ainsi, et un réseau spécialisé passe par sa classe générée (plus
+         * rapide que le lot, sauf avec les boucles de l'API Vector)
+         */
+        if (recurrent || nbSamples < MIN_BATCH || compiled != null && BatchKernel.INSTANCE.isScalar()) {
+            for (int s = 0; s < nbSamples; s++) {
+                if (rowMajor) {
+                    evaluate(inputs, s * nbInputs, 1, output, s * nbOutputs, 1);
+                } else {
+                    evaluate(inputs, s, nbSamples, output, s, nbSamples);
+                }
+            }
+
+            return;
+        }
+
+        int n = nbSamples;
+        Scratch work = scratch.get();
+
+        if (work.batch.length < values.length * n) {
+            work.batch = new float[values.length * n];
+        }
+
+        float[] m = work.batch;
+        float[] sums = work.sums;
+        BatchKernel kernel = BatchKernel.INSTANCE; // Boucles vectorisées si l'API Vector est disponible
+
+        // Lignes des entrées puis du biais
+        for (int i = 0; i < nbInputs; i++) {
+            if (rowMajor) {
+                for (int s = 0; s < n; s++) {
+                    m[i * n + s] = inputs[s * nbInputs + i];
+                }
+            } else {
+                System.arraycopy(inputs, i * n, m, i * n, n);
+            }
+        }
+
+        Arrays.fill(m, nbInputs * n, (nbInputs + 1) * n, 1);
+
+        // Le lot est découpé en tuiles : toutes les lignes d'une tuile restent en cache pendant le parcours du réseau
+        for (int start = 0; start < n; start += TILE) {
+            int length = Math.min(TILE, n - start);
+
+            for (int node = 0, index = nbInputs + 1; index < values.length; node++, index++) {
+                Arrays.fill(sums, 0, length, 0);
+
+                // Même ordre de sommation que evaluate, pour chaque échantillon
+                for (int con = offsets[node]; con < offsets[node + 1]; con++) {
+                    kernel.accumulate(sums, m, sources[con] * n + start, weights[con], length);
+                }
+
+                kernel.activate(activation, sums, m, index * n + start, length);
+            }
+        }
+
+        for (int i = 0; i < nbOutputs; i++) {
+            int row = outputIndexs[i] * n;
+
+            if (rowMajor) {
+                for (int s = 0; s < n; s++) {
+                    output[s * nbOutputs + i] = m[row + s];
+                }
+            } else {
+                System.arraycopy(m, row, output, i * n, n);
+            }
+        }
+
+        // L'état du réseau est celui laissé par le dernier échantillon
+        for (int index = 0; index < values.length; index++) {
+            values[index] = m[index * n + n - 1];
+        }
+    }
+
+    // Nom des boucles utilisées par evaluateBatch (scalaires ou API Vector, voir BatchKernel)
+    public static String getBatchKernel() {
+        return BatchKernel.INSTANCE.getName();
+    }
+
+    /*
+     * Tableaux de travail de l'évaluation par lot, propres à un thread : plusieurs
+     * réseaux peuvent être évalués en même temps sans les partager, et sans que
+     * chaque réseau garde les siens. Seules les valeurs des noeuds (values)
+     * appartiennent au réseau.
+     */
+    private static final class Scratch {
+        private float[] batch = new float[0]; // Matrice des valeurs (un noeud par ligne)
+        private final float[] sums = new float[TILE]; // Sommes pondérées d'un noeud pour une tuile d'échantillons
+    }
+
+    // Rangement d'une matrice d'échantillons dans un tableau à plat
+    public enum Layout {
+        RowMajor, // Un échantillon après l'autre
+        ColumnMajor // Une entrée (ou sortie) après l'autre
+    }
+}
@@ -0,0 +1,369 @@
+package Genome;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Génère, à partir du plan d'un Network, une classe dont la méthode evaluate est
+ * une suite d'opérations sans boucle ni tableau intermédiaire : chaque noeud est
+ * une variable locale et chaque poids une constante. Le JIT peut alors tout
+ * garder en registres. Chaque classe est chargée par son propre ClassLoader, elle
+ * est donc déchargée dès que le réseau n'est plus utilisé.
+ *
+ * Comme l'évaluation interprétée, la classe écrit aussi la valeur de chaque noeud
+ * (entrées comprises) dans l'état partagé avec le Network : ANN.getState, et donc
+ * les sauvegardes, sont les mêmes qu'un réseau soit compilé ou non. Ces écritures
+ * ne sont jamais relues dans l'évaluation, sauf par les connexions qui bouclent.
+ */
+final class NetworkCompiler {
+    private static final AtomicInteger ClassCounter = new AtomicInteger(); // Pour que chaque classe générée ait un nom unique
+    private static final int FIRST_NODE_LOCAL = 7; // this, inputs, inOffset, inStride, output, outOffset, outStride
+    private static final int MAX_CODE_LENGTH = 65535; // Taille maximale d'une méthode dans un fichier .class
+
+    // Opcodes utilisés
+    private static final int ICONST_0 = 0x03;
+    private static final int FCONST_0 = 0x0b;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD = 0x15;
+    private static final int FLOAD = 0x17;
+    private static final int ALOAD = 0x19;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int FSTORE = 0x38;
+    private static final int WIDE = 0xc4;
+    private static final int FALOAD = 0x30;
+    private static final int FASTORE = 0x51;
+    private static final int FADD = 0x62;
+    private static final int FMUL = 0x6a;
+    private static final int IADD = 0x60;
+    private static final int IMUL = 0x68;
+    private static final int RETURN = 0xb1;
+    private static final int GETSTATIC = 0xb2;
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndexs = new HashMap<>();
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+    private NetworkCompiler() {
+    }
+
+    /*
+     * Génère la classe du réseau et l'instancie avec son état (les valeurs du
+     * Network, toutes écrites à chaque évaluation, lues pour les connexions qui
+     * bouclent). Retourne null si le réseau est trop grand pour tenir dans une
+     * seule méthode.
+     */
+    static CompiledNetwork compile(int nbInputs, int[] offsets, int[] sources, float[] weights, int[] outputIndexs, float[] state, Activation activation) {
+        String name = "Genome/GeneratedNetwork" + ClassCounter.incrementAndGet();
+        byte[] bytes;
+
+        try {
+            bytes = new NetworkCompiler().generate(name, nbInputs, offsets, sources, weights, outputIndexs, state.length, activation);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Impossible, tout est écrit en mémoire
+        }
+
+        if (bytes == null) {
+            return null;
+        }
+
+        try {
+            Class<?> generated = new Loader(NetworkCompiler.class.getClassLoader()).define(name.replace('/', '.'), bytes);
+            return (CompiledNetwork) generated.getConstructor(float[].class).newInstance((Object) state);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Classe générée invalide : " + name, e);
+        }
+    }
+
+    private byte[] generate(String name, int nbInputs, int[] offsets, int[] sources, float[] weights, int[] outputIndexs, int nbNodes, Activation activation) throws IOException {
+        int bias = nbInputs;
+
+        int thisClass = classRef(name);
+        int objectClass = classRef("java/lang/Object");
+        int interfaceClass = classRef("Genome/CompiledNetwork");
+        int stateField = fieldRef(name, "state", "[F");
+        int activationField = fieldRef("Genome/Activation", activation.name(), "LGenome/Activation;");
+        int apply = methodRef("Genome/Activation", "apply", "(F)F");
+        int objectInit = methodRef("java/lang/Object", "<init>", "()V");
+        int init = utf8("<init>");
+        int initDescriptor = utf8("([F)V");
+        int evaluate = utf8("evaluate");
+        int evaluateDescriptor = utf8("([FII[FII)V");
+        int stateName = utf8("state");
+        int stateDescriptor = utf8("[F");
+        int codeAttribute = utf8("Code");
+
+        // Entrées : une variable locale par entrée, recopiée dans l'état
+        for (int i = 0; i < nbInputs; i++) {
+            emit(ALOAD, 1);
+            emit(ILOAD, 2);
+            emit(ILOAD, 3);
+            pushInt(i);
+            emit(IMUL);
+            emit(IADD);
+            emit(FALOAD);
+            local(FSTORE, i);
+            storeState(stateField, i);
+        }
+
+        // Noeuds calculés, dans l'ordre du plan
+        for (int node = 0, index = nbInputs + 1; index < nbNodes; node++, index++) {
+            emitIndex(GETSTATIC, activationField);
+            emit(FCONST_0);
+
+            for (int con = offsets[node]; con < offsets[node + 1]; con++) {
+                int src = sources[con];
+
+                if (src == bias) { // 1 * poids = poids
+                    pushFloat(weights[con]);
+                    emit(FADD);
+                    continue;
+                }
+
+                if (src < index) {
+                    local(FLOAD, src);
+                } else { // Connexion qui boucle : valeur de l'évaluation précédente
+                    emit(ALOAD, 0);
+                    emitIndex(GETFIELD, stateField);
+                    pushInt(src);
+                    emit(FALOAD);
+                }
+
+                pushFloat(weights[con]);
+                emit(FMUL);
+                emit(FADD);
+            }
+
+            emitIndex(INVOKEVIRTUAL, apply);
+            local(FSTORE, index);
+            storeState(stateField, index);
+
+            if (code.size() > MAX_CODE_LENGTH) {
+                return null;
+            }
+        }
+
+        // Sorties
+        for (int i = 0; i < outputIndexs.length; i++) {
+            emit(ALOAD, 4);
+            emit(ILOAD, 5);
+            emit(ILOAD, 6);
+            pushInt(i);
+            emit(IMUL);
+            emit(IADD);
+
+            if (outputIndexs[i] == bias) {
+                pushFloat(1);
+            } else {
+                local(FLOAD, outputIndexs[i]);
+            }
+
+            emit(FASTORE);
+        }
+
+        emit(RETURN);
+
+        if (code.size() > MAX_CODE_LENGTH || poolIndexs.size() >= 0xffff || FIRST_NODE_LOCAL + nbNodes > 0xffff) {
+            return null;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(0xcafebabe);
+        out.writeShort(0);
+        out.writeShort(52); // Java 8
+        out.writeShort(poolIndexs.size() + 1);
+        out.write(pool.toByteArray());
+        out.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+        out.writeShort(thisClass);
+        out.writeShort(objectClass);
+        out.writeShort(1);
+        out.writeShort(interfaceClass);
+
+        // Champ state
+        out.writeShort(1);
+        out.writeShort(0x0002 | 0x0010); // private final
+        out.writeShort(stateName);
+        out.writeShort(stateDescriptor);
+        out.writeShort(0);
+
+        out.writeShort(2);
+
+        // Constructeur : this.state = state
+        byte[] initCode = new byte[]{
+                (byte) ALOAD_0,
+                (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit,
+                (byte) ALOAD_0,
+                (byte) ALOAD_1,
+                (byte) PUTFIELD, (byte) (stateField >> 8), (byte) stateField,
+                (byte) RETURN
+        };
+        writeMethod(out, init, initDescriptor, codeAttribute, 2, 2, initCode);
+        writeMethod(out, evaluate, evaluateDescriptor, codeAttribute, 6, FIRST_NODE_LOCAL + nbNodes, code.toByteArray());
+
+        out.writeShort(0);
+
+        return bytes.toByteArray();
+    }
+
+    private static void writeMethod(DataOutputStream out, int name, int descriptor, int codeAttribute, int maxStack, int maxLocals, byte[] code) throws IOException {
+        out.writeShort(0x0001); // public
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeAttribute);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // Pas d'exceptions
+        out.writeShort(0); // Pas d'attributs
+    }
+
+    private void emit(int opcode) {
+        code.write(opcode);
+    }
+
+    private void emit(int opcode, int operand) {
+        code.write(opcode);
+        code.write(operand);
+    }
+
+    private void emitIndex(int opcode, int index) {
+        code.write(opcode);
+        code.write(index >> 8);
+        code.write(index);
+    }
+
+    // Recopie la variable locale du noeud dans l'état : state[node] = noeud
+    private void storeState(int stateField, int node) throws IOException {
+        emit(ALOAD, 0);
+        emitIndex(GETFIELD, stateField);
+        pushInt(node);
+        local(FLOAD, node);
+        emit(FASTORE);
+    }
+
+    // Charge ou range la variable locale d'un noeud
+    private void local(int opcode, int node) {
+        int local = FIRST_NODE_LOCAL + node;
+
+        if (local > 0xff) {
+            code.write(WIDE);
+            emitIndex(opcode, local);
+        } else {
+            emit(opcode, local);
+        }
+    }
+
+    private void pushInt(int value) throws IOException {
+        if (value >= -1 && value <= 5) {
+            emit(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            emit(BIPUSH, value & 0xff);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            emitIndex(SIPUSH, value);
+        } else {
+            constant(constantIndex("I" + value, 3, value));
+        }
+    }
+
+    private void pushFloat(float value) throws IOException {
+        constant(constantIndex("F" + Float.floatToRawIntBits(value), 4, Float.floatToRawIntBits(value)));
+    }
+
+    private void constant(int index) {
+        if (index > 0xff) {
+            emitIndex(LDC_W, index);
+        } else {
+            emit(LDC, index);
+        }
+    }
+
+    // Constante entière ou flottante (tag 3 ou 4), écrite sur 4 octets
+    private int constantIndex(String key, int tag, int bits) throws IOException {
+        Integer index = poolIndexs.get(key);
+
+        if (index == null) {
+            poolOut.writeByte(tag);
+            poolOut.writeInt(bits);
+            index = poolIndexs.size() + 1;
+            poolIndexs.put(key, index);
+        }
+
+        return index;
+    }
+
+    private int utf8(String value) throws IOException {
+        Integer index = poolIndexs.get("U" + value);
+
+        if (index == null) {
+            poolOut.writeByte(1);
+            poolOut.writeUTF(value);
+            index = poolIndexs.size() + 1;
+            poolIndexs.put("U" + value, index);
+        }
+
+        return index;
+    }
+
+    private int classRef(String name) throws IOException {
+        return reference("C" + name, 7, utf8(name), -1);
+    }
+
+    private int fieldRef(String owner, String name, String descriptor) throws IOException {
+        return reference("R" + owner + "." + name + ":" + descriptor, 9, classRef(owner), nameAndType(name, descriptor));
+    }
+
+    private int methodRef(String owner, String name, String descriptor) throws IOException {
+        return reference("M" + owner + "." + name + descriptor, 10, classRef(owner), nameAndType(name, descriptor));
+    }
+
+    private int nameAndType(String name, String descriptor) throws IOException {
+        return reference("N" + name + ":" + descriptor, 12, utf8(name), utf8(descriptor));
+    }
+
+    // Entrée du constant pool faite d'un ou deux index vers d'autres entrées
+    private int reference(String key, int tag, int first, int second) throws IOException {
+        Integer index = poolIndexs.get(key);
+
+        if (index == null) {
+            poolOut.writeByte(tag);
+            poolOut.writeShort(first);
+
+            if (second >= 0) {
+                poolOut.writeShort(second);
+            }
+
+            index = poolIndexs.size() + 1;
+            poolIndexs.put(key, index);
+        }
+
+        return index;
+    }
+
+    // ClassLoader d'une seule classe générée
+    private static final class Loader extends ClassLoader {
+        Loader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package Genome;
+
+import java.util.Arrays;
+
+/*
+ * Numéros des noeuds d'un ANN rangés par rôle (entrées, cachés, sorties), triés
+ * et calculés une seule fois à partir des gènes. Les tableaux ne doivent pas
+ * être modifiés : l'objet est partagé par tous les threads qui lisent l'ANN.
+ */
+public final class NodeRoles {
+    private final int[] inputs; // Entrées, biais compris (le dernier)
+    private final int[] hiddens;
+    private final int[] outputs;
+
+    /*
+     * Constructeur de la classe NodeRoles, prend en paramètre les gènes, le nombre
+     * d'entrées, le nombre de sorties et le numéro du premier noeud de sortie.
+     */
+    NodeRoles(ConnectionGenes genes, int nbInputs, int nbOutputs, int firstOutput) {
+        inputs = new int[nbInputs + 1];
+        outputs = new int[nbOutputs];
+
+        for (int i = 0; i <= nbInputs; i++) {
+            inputs[i] = i;
+        }
+
+        for (int i = 0; i < nbOutputs; i++) {
+            outputs[i] = firstOutput + i;
+        }
+
+        // Les noeuds cachés sont ceux cités par les gènes qui ne sont ni des entrées, ni le biais, ni des sorties
+        int[] ids = new int[2 * genes.size()];
+        int nbIds = 0;
+
+        for (int i = 0; i < genes.size(); i++) {
+            ids[nbIds++] = genes.getInto(i);
+            ids[nbIds++] = genes.getOut(i);
+        }
+
+        Arrays.sort(ids, 0, nbIds);
+
+        int nbHiddens = 0;
+
+        for (int i = 0; i < nbIds; i++) {
+            int id = ids[i];
+            boolean known = id >= 0 && id <= nbInputs || id >= firstOutput && id < firstOutput + nbOutputs;
+
+            if (!known && (nbHiddens == 0 || ids[nbHiddens - 1] != id)) {
+                ids[nbHiddens++] = id;
+            }
+        }
+
+        hiddens = Arrays.copyOf(ids, nbHiddens);
+    }
+
+    public int getNbInputs() {
+        return inputs.length - 1;
+    }
+
+    public int getNbHiddens() {
+        return hiddens.length;
+    }
+
+    public int getNbOutputs() {
+        return outputs.length;
+    }
+
+    public int getNbNodes() {
+        return inputs.length + hiddens.length + outputs.length;
+    }
+
+    public int getInput(int i) {
+        return inputs[i];
+    }
+
+    public int getHidden(int i) {
+        return hiddens[i];
+    }
+
+    public int getOutput(int i) {
+        return outputs[i];
+    }
+
+    // Plus grand numéro de noeud caché, 0 s'il n'y en a pas
+    public int getMaxHidden() {
+        return hiddens.length > 0 ? hiddens[hiddens.length - 1] : 0;
+    }
+}
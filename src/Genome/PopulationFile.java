@@ -0,0 +1,264 @@
+package Genome;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Fichier de population fait pour être projeté en mémoire (FileChannel.map) :
+ * l'ouvrir ne lit que l'en-tête et les colonnes des génomes à vérifier (début et
+ * activation, quelques octets par génome), et chaque génome est lu directement
+ * à sa place dans le fichier, quand on le demande. Toutes les valeurs ont une
+ * taille fixe et sont rangées par colonnes, en little-endian :
+ *
+ *   en-tête (HEADER_SIZE octets) : MAGIC, VERSION, nombre de génomes, nombre total de gènes
+ *   début de chaque génome dans les colonnes des gènes (long, un de plus que de génomes)
+ *   fit (double), activation (octet), état (octet) de chaque génome
+ *   entrées, sorties, n° d'innovation (int), poids (float), activé (octet) de chaque gène
+ *
+ * Chaque colonne commence à un multiple de 8 octets et est projetée séparément
+ * (une projection est limitée à 2 Go). Lire un génome revient à copier ses
+ * tranches de colonnes, d'un bloc, dans les tableaux de ses gènes.
+ */
+public final class PopulationFile {
+    public static final int MAGIC = 0x4e454150; // "NEAP"
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final byte FIRST = 1; // Bits de l'état d'un génome
+    private static final byte EVALUATED = 2;
+
+    private final int nbInputs; // Forme des génomes, commune à toute la population
+    private final int nbOutputs;
+    private final int nbMaxHiddenNodes;
+    private final LongBuffer starts;
+    private final DoubleBuffer fits;
+    private final ByteBuffer activations;
+    private final ByteBuffer flags;
+    private final IntBuffer into;
+    private final IntBuffer out;
+    private final IntBuffer innovation;
+    private final FloatBuffer weight;
+    private final ByteBuffer enabled;
+
+    private PopulationFile(FileChannel channel) throws IOException {
+        ByteBuffer header = map(channel, 0, HEADER_SIZE);
+
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Ce n'est pas un fichier de population");
+        }
+
+        if (header.getInt(4) != VERSION) {
+            throw new IOException("Version " + header.getInt(4) + " non supportée (version actuelle : " + VERSION + ")");
+        }
+
+        int nbGenomes = header.getInt(8);
+        long nbGenes = header.getLong(12);
+        nbInputs = header.getShort(20);
+        nbOutputs = header.getShort(22);
+        nbMaxHiddenNodes = header.getInt(24);
+
+        if (nbGenomes < 0 || nbGenes < 0 || nbGenes > Integer.MAX_VALUE || nbInputs < 0 || nbOutputs < 0 || nbMaxHiddenNodes < 0
+                || channel.size() < fileSize(nbGenomes, nbGenes)) {
+            throw new IOException("Fichier de population tronqué ou invalide");
+        }
+
+        long[] offsets = offsets(nbGenomes, nbGenes);
+        starts = map(channel, offsets[0], 8L * (nbGenomes + 1)).asLongBuffer();
+        fits = map(channel, offsets[1], 8L * nbGenomes).asDoubleBuffer();
+        activations = map(channel, offsets[2], nbGenomes);
+        flags = map(channel, offsets[3], nbGenomes);
+        into = map(channel, offsets[4], 4 * nbGenes).asIntBuffer();
+        out = map(channel, offsets[5], 4 * nbGenes).asIntBuffer();
+        innovation = map(channel, offsets[6], 4 * nbGenes).asIntBuffer();
+        weight = map(channel, offsets[7], 4 * nbGenes).asFloatBuffer();
+        enabled = map(channel, offsets[8], nbGenes);
+
+        if (!isValid(nbGenomes, nbGenes)) {
+            throw new IOException("Fichier de population tronqué ou invalide");
+        }
+    }
+
+    /*
+     * Vérifie ce que get lit sans contrôle : les génomes se suivent dans les colonnes
+     * des gènes (du premier au dernier gène, sans se chevaucher) et leur activation
+     * existe
+     */
+    private boolean isValid(int nbGenomes, long nbGenes) {
+        if (starts.get(0) != 0 || starts.get(nbGenomes) != nbGenes) {
+            return false;
+        }
+
+        for (int i = 0; i < nbGenomes; i++) {
+            byte activation = activations.get(i);
+
+            if (starts.get(i + 1) < starts.get(i) || activation < 0 || activation >= Activation.values().length) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Ouvre le fichier en le projetant en mémoire, les gènes ne sont lus qu'à la demande
+    public static PopulationFile open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new PopulationFile(channel); // Les projections restent valides une fois le canal fermé
+        }
+    }
+
+    // Écrit la population (des génomes de même forme) dans le fichier, par projection en mémoire
+    public static void write(Path file, List<ANN> anns) throws IOException {
+        int nbGenomes = anns.size();
+        long nbGenes = 0;
+
+        for (ANN ann : anns) {
+            nbGenes += ann.genes.size();
+        }
+
+        ANN shape = nbGenomes > 0 ? anns.get(0) : null;
+        long[] offsets = offsets(nbGenomes, nbGenes);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = map(channel, 0, HEADER_SIZE, FileChannel.MapMode.READ_WRITE);
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, nbGenomes);
+            header.putLong(12, nbGenes);
+            header.putShort(20, (short) (shape != null ? shape.getNbInputs() : 0));
+            header.putShort(22, (short) (shape != null ? shape.getNbOutputs() : 0));
+            header.putInt(24, shape != null ? shape.getNbMaxHiddenNodes() : 0);
+
+            LongBuffer starts = map(channel, offsets[0], 8L * (nbGenomes + 1), FileChannel.MapMode.READ_WRITE).asLongBuffer();
+            DoubleBuffer fits = map(channel, offsets[1], 8L * nbGenomes, FileChannel.MapMode.READ_WRITE).asDoubleBuffer();
+            ByteBuffer activations = map(channel, offsets[2], nbGenomes, FileChannel.MapMode.READ_WRITE);
+            ByteBuffer flags = map(channel, offsets[3], nbGenomes, FileChannel.MapMode.READ_WRITE);
+            IntBuffer into = map(channel, offsets[4], 4 * nbGenes, FileChannel.MapMode.READ_WRITE).asIntBuffer();
+            IntBuffer out = map(channel, offsets[5], 4 * nbGenes, FileChannel.MapMode.READ_WRITE).asIntBuffer();
+            IntBuffer innovation = map(channel, offsets[6], 4 * nbGenes, FileChannel.MapMode.READ_WRITE).asIntBuffer();
+            FloatBuffer weight = map(channel, offsets[7], 4 * nbGenes, FileChannel.MapMode.READ_WRITE).asFloatBuffer();
+            ByteBuffer enabled = map(channel, offsets[8], nbGenes, FileChannel.MapMode.READ_WRITE);
+
+            for (ANN ann : anns) {
+                ConnectionGenes genes = ann.genes;
+
+                if (ann.getNbInputs() != shape.getNbInputs() || ann.getNbOutputs() != shape.getNbOutputs() || ann.getNbMaxHiddenNodes() != shape.getNbMaxHiddenNodes()) {
+                    throw new IllegalArgumentException("Les génomes d'une population doivent avoir la même forme");
+                }
+
+                starts.put(into.position());
+                fits.put(ann.fit);
+                activations.put((byte) ann.getActivation().ordinal());
+                flags.put((byte) ((ann.first ? FIRST : 0) | (ann.isEvaluated() ? EVALUATED : 0)));
+
+                // Les colonnes des gènes sont copiées d'un bloc
+                into.put(genes.intoColumn(), 0, genes.size());
+                out.put(genes.outColumn(), 0, genes.size());
+                innovation.put(genes.innovationColumn(), 0, genes.size());
+                weight.put(genes.weightColumn(), 0, genes.size());
+
+                for (int i = 0; i < genes.size(); i++) {
+                    enabled.put((byte) (genes.isEnabled(i) ? 1 : 0));
+                }
+            }
+
+            starts.put(into.position());
+        }
+    }
+
+    public int size() {
+        return fits.capacity();
+    }
+
+    public int getNbGenes(int i) {
+        return (int) (starts.get(i + 1) - starts.get(i));
+    }
+
+    public double getFit(int i) {
+        return fits.get(i);
+    }
+
+    // Lit le génome i, ses colonnes étant copiées d'un bloc depuis le fichier
+    public ANN get(int i) {
+        int start = (int) starts.get(i);
+        int size = getNbGenes(i);
+        int capacity = Math.max(size, 1);
+        int[] intoColumn = new int[capacity];
+        int[] outColumn = new int[capacity];
+        int[] innovationColumn = new int[capacity];
+        float[] weightColumn = new float[capacity];
+        long[] enabledColumn = new long[(capacity + 63) >>> 6];
+
+        // Des vues dupliquées : plusieurs threads peuvent lire le fichier en même temps
+        ((IntBuffer) into.duplicate().position(start)).get(intoColumn, 0, size);
+        ((IntBuffer) out.duplicate().position(start)).get(outColumn, 0, size);
+        ((IntBuffer) innovation.duplicate().position(start)).get(innovationColumn, 0, size);
+        ((FloatBuffer) weight.duplicate().position(start)).get(weightColumn, 0, size);
+
+        for (int j = 0; j < size; j++) {
+            if (enabled.get(start + j) != 0) {
+                enabledColumn[j >>> 6] |= 1L << j;
+            }
+        }
+
+        ANN ann = new ANN(new ConnectionGenes(intoColumn, outColumn, innovationColumn, weightColumn, enabledColumn, size), nbInputs, nbOutputs, nbMaxHiddenNodes);
+        ann.setActivation(Activation.values()[activations.get(i)]);
+        ann.first = (flags.get(i) & FIRST) != 0;
+
+        if ((flags.get(i) & EVALUATED) != 0) {
+            ann.setFit(fits.get(i));
+        }
+
+        return ann;
+    }
+
+    // Lit tous les génomes, dans l'ordre
+    public ArrayList<ANN> getAll() {
+        ArrayList<ANN> rslt = new ArrayList<>(size());
+
+        for (int i = 0; i < size(); i++) {
+            rslt.add(get(i));
+        }
+
+        return rslt;
+    }
+
+    // Position de chaque colonne dans le fichier (chacune alignée sur 8 octets)
+    private static long[] offsets(int nbGenomes, long nbGenes) {
+        long[] sizes = {8L * (nbGenomes + 1), 8L * nbGenomes, nbGenomes, nbGenomes, 4 * nbGenes, 4 * nbGenes, 4 * nbGenes, 4 * nbGenes, nbGenes};
+        long[] rslt = new long[sizes.length + 1];
+        rslt[0] = HEADER_SIZE;
+
+        for (int i = 0; i < sizes.length; i++) {
+            rslt[i + 1] = (rslt[i] + sizes[i] + 7) & ~7L;
+        }
+
+        return rslt;
+    }
+
+    private static long fileSize(int nbGenomes, long nbGenes) {
+        long[] offsets = offsets(nbGenomes, nbGenes);
+
+        return offsets[offsets.length - 1];
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        return map(channel, position, size, FileChannel.MapMode.READ_ONLY);
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size, FileChannel.MapMode mode) throws IOException {
+        MappedByteBuffer rslt = channel.map(mode, position, size);
+        rslt.order(ByteOrder.LITTLE_ENDIAN);
+
+        return rslt;
+    }
+}
@@ -0,0 +1,248 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Registre des n° d'innovation de tout l'apprentissage : une connexion (entrée,
+ * sortie) reçoit un n° la première fois qu'elle apparaît, puis garde toujours le
+ * même, quelle que soit l'espèce où la mutation se produit.
+ *
+ * C'est une table à adressage ouvert dont les clés sont les 2 noeuds rangés dans
+ * un long. La recherche et l'ajout se font sans verrou (compare-and-set sur la
+ * case), seul l'agrandissement de la table en prend un : les cases vides de
+ * l'ancienne table sont alors marquées MOVED, et un thread qui en rencontre une
+ * attend la nouvelle table.
+ *
+ * Les n° sont attribués dans l'ordre des appels : pour qu'une graine rejoue le
+ * même apprentissage, Neat (et Islands, pour toutes les îles) n'attribue les
+ * nouveaux n° qu'après les croisements parallèles, enfant après enfant (voir
+ * Neat.birth). La table sans verrou garde la lecture (get) rapide pendant les
+ * croisements.
+ */
+public class InnovationRegistry {
+    private static final long EMPTY = -1L; // Case libre (aucune connexion ne relie -1 à -1)
+    private static final long MOVED = -2L; // Case d'une table remplacée par une plus grande
+    private static final int PENDING = 0; // N° pas encore attribué à la clé (les n° commencent à 1)
+
+    private volatile Table table;
+    private final AtomicInteger counter = new AtomicInteger(); // Dernier n° d'innovation attribué
+    private final AtomicInteger size = new AtomicInteger(); // Nombre de connexions enregistrées
+
+    public InnovationRegistry() {
+        this(64);
+    }
+
+    public InnovationRegistry(int capacity) {
+        table = new Table(Integer.highestOneBit(Math.max(capacity, 4) * 2 - 1));
+    }
+
+    // Retourne le n° d'innovation de la connexion, en attribuant le suivant si elle est nouvelle
+    public int innovation(int into, int out) {
+        long key = key(into, out);
+
+        while (true) {
+            int rslt = table.innovation(key, this);
+
+            if (rslt != PENDING) {
+                return rslt;
+            }
+
+            // La table a été remplacée : attendre la fin de l'agrandissement puis recommencer dans la nouvelle
+            awaitGrow();
+        }
+    }
+
+    // Retourne le n° d'innovation de la connexion, ou -1 si elle n'a jamais été enregistrée
+    public int get(int into, int out) {
+        long key = key(into, out);
+
+        while (true) {
+            int rslt = table.get(key, this);
+
+            if (rslt != PENDING) {
+                return rslt;
+            }
+
+            awaitGrow();
+        }
+    }
+
+    // Dernier n° d'innovation attribué
+    public int getLastInnovation() {
+        return counter.get();
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /*
+     * Parcourt les connexions enregistrées avec leur n° (pour les sauvegarder), à
+     * appeler quand aucun n° n'est attribué en même temps.
+     */
+    public void forEach(Entry entry) {
+        Table current = table;
+
+        for (int i = 0; i < current.keys.length(); i++) {
+            long key = current.keys.get(i);
+
+            if (key != EMPTY && key != MOVED) {
+                entry.accept((int) (key >> 32), (int) key, current.innovations.get(i));
+            }
+        }
+    }
+
+    /*
+     * Enregistre une connexion avec un n° déjà attribué (relu d'une sauvegarde).
+     * Les n° suivants continueront après le plus grand n° enregistré.
+     */
+    public synchronized void register(int into, int out, int innovation) {
+        if (get(into, out) != -1) {
+            throw new IllegalStateException("Connexion " + into + " -> " + out + " déjà enregistrée");
+        }
+
+        while (size.get() + 1 > table.threshold) {
+            grow(table);
+        }
+
+        table.put(key(into, out), innovation);
+        size.incrementAndGet();
+        counter.accumulateAndGet(innovation, Math::max);
+    }
+
+    // Connexion enregistrée, reçue par forEach
+    public interface Entry {
+        void accept(int into, int out, int innovation);
+    }
+
+    // Range les 2 noeuds d'une connexion dans un long
+    static long key(int into, int out) {
+        return ((long) into << 32) | (out & 0xffffffffL);
+    }
+
+    // L'agrandissement garde le verrou jusqu'à ce que la nouvelle table soit publiée
+    private synchronized void awaitGrow() {
+    }
+
+    // Remplace la table par une 2 fois plus grande, si personne ne l'a fait entre temps
+    private synchronized void grow(Table old) {
+        if (table != old) {
+            return;
+        }
+
+        Table bigger = new Table(old.keys.length() * 2);
+
+        for (int i = 0; i < old.keys.length(); i++) {
+            long key = old.keys.get(i);
+
+            // Une case libre est condamnée, une clé en cours d'ajout est recopiée une fois son n° attribué
+            while (key == EMPTY && !old.keys.compareAndSet(i, EMPTY, MOVED)) {
+                key = old.keys.get(i);
+            }
+
+            if (key != EMPTY) {
+                bigger.put(key, old.waitInnovation(i));
+            }
+        }
+
+        table = bigger;
+    }
+
+    // Une table de taille fixe (puissance de 2), les clés et les n° dans 2 tableaux atomiques
+    private static final class Table {
+        private final AtomicLongArray keys;
+        private final AtomicIntegerArray innovations;
+        private final int mask;
+        private final int threshold; // Nombre de clés au-delà duquel on agrandit (3/4 de la table)
+
+        private Table(int capacity) {
+            keys = new AtomicLongArray(capacity);
+            innovations = new AtomicIntegerArray(capacity);
+            mask = capacity - 1;
+            threshold = capacity - (capacity >>> 2);
+
+            for (int i = 0; i < capacity; i++) {
+                keys.set(i, EMPTY);
+            }
+        }
+
+        // N° de la clé, attribué si besoin, ou PENDING si la table a été remplacée
+        private int innovation(long key, InnovationRegistry registry) {
+            for (int probe = 0, i = LongHashSet.hash(key) & mask; probe <= mask; probe++, i = (i + 1) & mask) {
+                long current = keys.get(i);
+
+                if (current == MOVED) {
+                    return PENDING;
+                }
+
+                if (current == EMPTY) {
+                    if (!keys.compareAndSet(i, EMPTY, key)) {
+                        i = (i - 1) & mask; // Case prise entre temps, on la relit
+                        continue;
+                    }
+
+                    int rslt = registry.counter.incrementAndGet();
+                    innovations.set(i, rslt);
+
+                    if (registry.size.incrementAndGet() > threshold) {
+                        registry.grow(this);
+                    }
+
+                    return rslt;
+                }
+
+                if (current == key) {
+                    return waitInnovation(i);
+                }
+            }
+
+            // Table remplie par des ajouts concurrents pendant son agrandissement
+            registry.grow(this);
+            return PENDING;
+        }
+
+        // N° de la clé, -1 si elle est absente, ou PENDING si la table a été remplacée
+        private int get(long key, InnovationRegistry registry) {
+            for (int probe = 0, i = LongHashSet.hash(key) & mask; probe <= mask; probe++, i = (i + 1) & mask) {
+                long current = keys.get(i);
+
+                if (current == MOVED) {
+                    return PENDING;
+                }
+
+                if (current == EMPTY) {
+                    return -1;
+                }
+
+                if (current == key) {
+                    return waitInnovation(i);
+                }
+            }
+
+            return registry.table != this ? PENDING : -1;
+        }
+
+        // Ajout sans concurrence, pendant l'agrandissement
+        private void put(long key, int innovation) {
+            int i = LongHashSet.hash(key) & mask;
+
+            while (keys.get(i) != EMPTY) {
+                i = (i + 1) & mask;
+            }
+
+            keys.set(i, key);
+            innovations.set(i, innovation);
+        }
+
+        // La clé vient d'être posée par un autre thread, qui va lui attribuer son n°
+        private int waitInnovation(int i) {
+            int rslt;
+
+            while ((rslt = innovations.get(i)) == PENDING) {
+                Thread.yield();
+            }
+
+            return rslt;
+        }
+    }
+}
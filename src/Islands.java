@@ -0,0 +1,161 @@
+import Genome.ANN;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+
+/*
+ * Modèle en îles : plusieurs populations Neat indépendantes, chacune avec ses
+ * espèces, évoluent en parallèle (une île par thread, sans autre
+ * synchronisation que l'attente de fin de génération). Toutes les
+ * migrationInterval générations, le champion de chaque île est copié dans les
+ * îles voisines selon la topologie.
+ *
+ * Les îles partagent le même registre d'innovations, pour que leurs génomes
+ * restent comparables une fois migrés : une connexion a le même n° dans toutes
+ * les îles. Chaque génération se fait en 3 temps : les croisements et mutations
+ * de toutes les îles en parallèle, puis la naissance des enfants, qui attribue
+ * les nouveaux n°, île après île dans l'ordre, et enfin le placement et
+ * l'évaluation en parallèle. Une graine rejoue donc le même apprentissage quel
+ * que soit le nombre de threads.
+ */
+public class Islands {
+    private static final int GRAIN = 1; // Une île par tâche
+
+    // Îles vers lesquelles chaque île envoie son champion
+    public enum Topology {
+        Ring, // Vers l'île suivante uniquement (la dernière envoie vers la première)
+        FullyConnected // Vers toutes les autres îles
+    }
+
+    private final ArrayList<Neat> islands;
+    private final int migrationInterval; // Nombre de générations entre 2 migrations
+    private final Topology topology;
+    private final ForkJoinPool pool; // Threads faisant évoluer les îles
+    private final InnovationRegistry innovations = new InnovationRegistry(); // N° d'innovation communs à toutes les îles
+
+
+    /*
+     * Constructeur de la classe Islands
+     * @param islands : Populations à faire évoluer, pas encore commencées (chacune de préférence sur 1 thread)
+     * @param migrationInterval : Nombre de générations entre 2 migrations
+     * @param topology : Îles vers lesquelles chaque champion migre
+     * @param nbThreads : Nombre de threads faisant évoluer les îles
+     */
+    public Islands(List<Neat> islands, int migrationInterval, Topology topology, int nbThreads) {
+        this.islands = new ArrayList<>(islands);
+        this.migrationInterval = migrationInterval;
+        this.topology = topology;
+        pool = new ForkJoinPool(nbThreads);
+
+        for (Neat island : this.islands) {
+            island.setInnovations(innovations);
+        }
+    }
+
+    // Fixer la graine de toutes les îles, chacune recevant la sienne tirée de celle-ci
+    public void setSeed(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+
+        for (Neat island : islands) {
+            island.setSeed(random.nextLong());
+        }
+    }
+
+    public List<Neat> getIslands() {
+        return islands;
+    }
+
+    public InnovationRegistry getInnovations() {
+        return innovations;
+    }
+
+    // Apprentissage de toutes les îles, jusqu'à ce que l'une d'elles atteigne threshold ou que maxIterations soit atteint
+    public ANN learn(double threshold, int maxIterations) {
+        ANN[] champions = new ANN[islands.size()]; // Meilleur génome de chaque île à la dernière génération
+        double score = 0; // Fitness du meilleur génome, toutes îles confondues
+        int cpt = 0;
+        ANN bestANN = null;
+
+        while (score < threshold && cpt < maxIterations) {
+            System.out.println("\nIteration " + cpt + " | Condition : " + score + " >= " + threshold);
+
+            // Même découpage que Neat.step, seule la naissance des enfants (n° d'innovation) est faite île après île
+            Parallel.forEach(pool, islands.size(), GRAIN, i -> islands.get(i).breed());
+
+            for (Neat island : islands) {
+                island.birth();
+            }
+
+            Parallel.forEach(pool, islands.size(), GRAIN, i -> champions[i] = islands.get(i).settle());
+
+            for (int i = 0; i < islands.size(); i++) {
+                System.out.println("\tÎle " + i + " : " + islands.get(i).getNbSpecies() + " espèces, meilleur ANN : " + champions[i]);
+
+                if (champions[i] != null && (bestANN == null || champions[i].fit > bestANN.fit)) {
+                    bestANN = champions[i];
+                }
+            }
+
+            score = bestANN != null ? bestANN.fit : 0;
+            cpt++;
+
+            if (cpt % migrationInterval == 0 && score < threshold) {
+                System.out.println("\tMigration des champions (" + topology + ")");
+                migrate(champions);
+            }
+        }
+
+        if (cpt == maxIterations) {
+            System.out.println("\nNombre d'itérations maximum (" + maxIterations + ") atteint !");
+        } else {
+            System.out.println("\nScore suffisant (" + score + " sur " + threshold + ") atteint en " + cpt + " itérations !");
+        }
+
+        // Le champion est compilé en classe spécialisée pour les évaluations qui suivront
+        if (bestANN != null) {
+            bestANN.specialise();
+        }
+
+        return bestANN;
+    }
+
+    /*
+     * Envoie une copie du champion de chaque île vers ses voisines. Les copies sont
+     * faites d'abord, dans l'ordre des îles de départ, puis placées en parallèle,
+     * chaque île ne touchant qu'à sa population.
+     */
+    private void migrate(ANN[] champions) {
+        ArrayList<ArrayList<ANN>> immigrants = new ArrayList<>();
+
+        for (int i = 0; i < islands.size(); i++) {
+            immigrants.add(new ArrayList<>());
+        }
+
+        for (int i = 0; i < islands.size(); i++) {
+            if (champions[i] == null) { // Tous les génomes de l'île ont un fit nul, rien à envoyer
+                continue;
+            }
+
+            if (topology == Topology.Ring) {
+                if (islands.size() > 1) {
+                    immigrants.get((i + 1) % islands.size()).add(champions[i].copy());
+                }
+            } else {
+                for (int j = 0; j < islands.size(); j++) {
+                    if (j != i) {
+                        immigrants.get(j).add(champions[i].copy());
+                    }
+                }
+            }
+        }
+
+        Parallel.forEach(pool, islands.size(), GRAIN, i -> {
+            if (immigrants.get(i).size() > 0) {
+                islands.get(i).immigrate(immigrants.get(i));
+            }
+        });
+    }
+}
@@ -0,0 +1,107 @@
+import java.util.Arrays;
+
+/*
+ * Ensemble de long à adressage ouvert, sans objets (pas de Long ni d'entrées).
+ * Vider l'ensemble ne fait qu'incrémenter un numéro de génération : une case
+ * n'est occupée que si son tampon est celui de la génération courante, on peut
+ * donc réutiliser le même ensemble pour chaque enfant sans rien effacer.
+ */
+public class LongHashSet {
+    private long[] keys;
+    private int[] stamps; // Génération à laquelle chaque case a été remplie
+    private int stamp = 1; // Génération courante (0 = case jamais remplie)
+    private int mask;
+    private int size;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    // Constructeur, prend en paramètre le nombre d'éléments prévus (l'ensemble s'agrandit si besoin)
+    public LongHashSet(int capacity) {
+        int length = Integer.highestOneBit(Math.max(capacity, 4) * 2 - 1) * 2;
+
+        keys = new long[length];
+        stamps = new int[length];
+        mask = length - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(long key) {
+        for (int i = hash(key) & mask; stamps[i] == stamp; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Ajoute la clé, retourne false si elle y était déjà
+    public boolean add(long key) {
+        int i = hash(key) & mask;
+
+        for (; stamps[i] == stamp; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return false;
+            }
+        }
+
+        keys[i] = key;
+        stamps[i] = stamp;
+        size++;
+
+        // On garde la table remplie au plus à moitié
+        if (size * 2 > keys.length) {
+            grow();
+        }
+
+        return true;
+    }
+
+    public void clear() {
+        size = 0;
+        stamp++;
+
+        if (stamp == 0) { // Après 2^32 générations, les anciens tampons pourraient revenir
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+    }
+
+    // Mélange les bits de la clé (finaliseur de MurmurHash3), pour que des clés proches soient dispersées
+    static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+
+        return (int) key;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldStamps = stamps;
+        int oldStamp = stamp;
+
+        keys = new long[oldKeys.length * 2];
+        stamps = new int[keys.length];
+        stamp = 1;
+        mask = keys.length - 1;
+
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldStamps[j] == oldStamp) {
+                int i = hash(oldKeys[j]) & mask;
+
+                while (stamps[i] == stamp) {
+                    i = (i + 1) & mask;
+                }
+
+                keys[i] = oldKeys[j];
+                stamps[i] = stamp;
+            }
+        }
+    }
+}
@@ -1,8 +1,17 @@
 import Genome.ANN;
-
+import Genome.Activation;
+import Genome.ConnectionGenes;
+import Genome.PopulationFile;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
 
 
 /*
@@ -21,29 +30,87 @@ public class Main {
     static double C1 = 2; // Coefficients de la formule de distanciation
     static double C2 = 2;
     static double C3 = 1;
-    static double thresholdDistanciation = 0.15; // Seuil de distanciation
+    static double thresholdDistanciation = 3.75; // Seuil de distanciation (avec C1, C2 et C3 ci-dessus : 10 à 30 espèces au plus fort)
 
     static int tauxMutation = 20; // Taux de mutation en %
+    static int tournamentSize = 1; // Nombre de génomes tirés pour choisir chaque parent (1 = tirage uniforme)
+    static int nbThreads = Runtime.getRuntime().availableProcessors(); // Nombre de threads pour les calculs en parallèle
+    static long seed = System.nanoTime(); // Graine de la reproduction, à fixer pour rejouer un apprentissage
+    static Activation activation = Activation.Exact; // Fonction d'activation pendant l'évolution (la validation finale utilise l'exacte)
+    static int nbIslands = 1; // Nombre de populations évoluant en parallèle (1 = une seule population, sans migrations)
+    static int migrationInterval = 10; // Nombre de générations entre 2 migrations des champions
+    static Islands.Topology topology = Islands.Topology.Ring; // Îles vers lesquelles chaque champion migre
+    static String workers = ""; // Workers d'évaluation, "hôte:port,hôte:port" (vide = évaluation dans ce processus)
+    static int nbLocalWorkers = 0; // Workers lancés dans ce processus sur localhost, pour tester le protocole
+    static int workerBatchSize = 16; // Nombre de génomes envoyés d'un bloc à un worker
+    static int workerWindow = 4; // Nombre de lots envoyés à un worker sans attendre sa réponse
+    static int workerTimeout = 0; // Délai en s accordé à un worker par lot, au-delà duquel il est écarté (0 = aucun délai, seule une connexion coupée l'écarte)
+    static String checkpointFile = ""; // Sauvegarde de l'apprentissage, reprise si le fichier existe (vide = pas de sauvegarde)
+    static int checkpointInterval = 100; // Nombre de générations entre 2 sauvegardes
+    static String populationFile = ""; // Population de départ, relue d'un fichier écrit par PopulationFile (vide = population sans connexions)
+    static String savePopulationFile = ""; // Fichier où écrire la population finale, pour en repartir plus tard (vide = pas d'écriture)
+    static String journalFile = ""; // Journal binaire des générations, lisible avec GenerationJournal.Reader (vide = pas de journal, une seule population)
 
 
     /*
      * Fonction principale, va générer les espèces, les générations et les réseaux de neurones.
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         int[] entrees = new int[nbInputs];
         int[] sorties = new int[nbOutputs];
 
-        // Au début, 1 espèce avec taille fixe de la population, totalement sans connexions
-        Specie espece = GenerateFirstPopulation(populationSize);
+        ANN result;
+        RemoteFitnessEvaluator remote = connectWorkers();
+
+        if (nbIslands > 1) {
+            result = learnIslands(remote);
+        } else {
+            Neat neat;
+            Path checkpoint = checkpointFile.isEmpty() ? null : Paths.get(checkpointFile);
+
+            if (checkpoint != null && Files.exists(checkpoint)) { // Reprise de l'apprentissage sauvegardé, avec ses paramètres et sa graine
+                neat = Neat.resume(checkpoint, nbThreads);
 
-        Neat neat = new Neat(espece, populationSize, nbMaxStable, C1, C2, C3, thresholdDistanciation, tauxMutation);
+                System.out.println("\nReprise de l'apprentissage à la génération " + neat.getGeneration() + " (graine : " + neat.getSeed() + ")\n");
+            } else {
+                // Au début, 1 espèce avec taille fixe de la population, totalement sans connexions
+                Specie espece = FirstPopulation();
 
-        System.out.println("\nDébut de l'apprentissage\n");
+                neat = new Neat(espece, populationSize, nbMaxStable, C1, C2, C3, thresholdDistanciation, tauxMutation, nbThreads);
+                neat.registerInnovations();
 
-        ANN result = neat.learn(threshold, maxIterations);
+                neat.setSeed(seed);
+                neat.setTournamentSize(tournamentSize);
+
+                System.out.println("\nDébut de l'apprentissage (graine : " + seed + ")\n");
+            }
+
+            if (checkpoint != null) {
+                neat.setCheckpoint(checkpoint, checkpointInterval);
+            }
+
+            if (!journalFile.isEmpty()) {
+                neat.setJournal(Paths.get(journalFile));
+            }
+
+            if (remote != null) {
+                neat.setFitnessEvaluator(remote);
+            }
+
+            result = neat.learn(threshold, maxIterations);
+
+            if (!savePopulationFile.isEmpty()) {
+                PopulationFile.write(Paths.get(savePopulationFile), neat.getPopulation());
+            }
+        }
+
+        if (remote != null) {
+            remote.close();
+        }
 
         System.out.println("\nFin de l'apprentissage");
 
+        result.setActivation(Activation.Exact);
         double[] outputs = Neat.evaluateXor(result);
 
         DecimalFormatSymbols dfs = new DecimalFormatSymbols();
@@ -57,6 +124,110 @@ public class Main {
         }
     }
 
+    /*
+     * Apprentissage en îles : nbIslands populations de taille populationSize, une
+     * par thread, qui échangent leurs champions toutes les migrationInterval
+     * générations.
+     */
+    private static ANN learnIslands(RemoteFitnessEvaluator remote) throws IOException {
+        ArrayList<Neat> populations = new ArrayList<>();
+
+        for (int i = 0; i < nbIslands; i++) {
+            Neat neat = new Neat(FirstPopulation(), populationSize, nbMaxStable, C1, C2, C3, thresholdDistanciation, tauxMutation, 1);
+            neat.setTournamentSize(tournamentSize);
+
+            if (remote != null) {
+                neat.setFitnessEvaluator(remote);
+            }
+
+            populations.add(neat);
+        }
+
+        Islands islands = new Islands(populations, migrationInterval, topology, nbThreads);
+        islands.setSeed(seed);
+
+        for (Neat neat : populations) {
+            neat.registerInnovations(); // Dans le registre partagé par les îles
+        }
+
+        System.out.println("\nDébut de l'apprentissage sur " + nbIslands + " îles (graine : " + seed + ")\n");
+
+        return islands.learn(threshold, maxIterations);
+    }
+
+    /*
+     * Évaluation par les workers listés dans workers et par nbLocalWorkers workers
+     * lancés ici, ou null s'il n'y en a aucun. Sans réponse des workers, les
+     * génomes sont évalués dans ce processus.
+     */
+    private static RemoteFitnessEvaluator connectWorkers() throws IOException {
+        ArrayList<InetSocketAddress> addresses = new ArrayList<>();
+
+        for (String worker : workers.split(",")) {
+            if (!worker.trim().isEmpty()) {
+                int colon = worker.lastIndexOf(':');
+                addresses.add(new InetSocketAddress(worker.substring(0, colon).trim(), Integer.parseInt(worker.substring(colon + 1).trim())));
+            }
+        }
+
+        for (int i = 0; i < nbLocalWorkers; i++) {
+            FitnessWorker worker = new FitnessWorker(0, new ParallelFitnessEvaluator(new ForkJoinPool(1)));
+            worker.start();
+            addresses.add(new InetSocketAddress("localhost", worker.getPort()));
+        }
+
+        if (addresses.isEmpty()) {
+            return null;
+        }
+
+        System.out.println("Évaluation par " + addresses.size() + " workers : " + addresses);
+
+        RemoteFitnessEvaluator remote = new RemoteFitnessEvaluator(addresses, workerBatchSize, workerWindow, new ParallelFitnessEvaluator(new ForkJoinPool(nbThreads)));
+        remote.setTimeout((int) Math.min(workerTimeout * 1000L, Integer.MAX_VALUE));
+
+        return remote;
+    }
+
+    /*
+     * Population de départ : relue de populationFile s'il est donné, sinon générée
+     * sans connexions
+     */
+    private static Specie FirstPopulation() throws IOException {
+        if (populationFile.isEmpty()) {
+            return GenerateFirstPopulation(populationSize);
+        }
+
+        return LoadPopulation(Paths.get(populationFile));
+    }
+
+    /*
+     * Relit une population écrite par PopulationFile, en une espèce. Le fichier est
+     * projeté en mémoire : seuls les gènes des génomes sont lus, d'un bloc.
+     */
+    public static Specie LoadPopulation(Path file) throws IOException {
+        PopulationFile population = PopulationFile.open(file);
+        ArrayList<ANN> anns = population.getAll();
+
+        if (anns.isEmpty()) {
+            throw new IOException("Population vide : " + file);
+        }
+
+        for (ANN ann : anns) {
+            if (ann.getNbInputs() != nbInputs || ann.getNbOutputs() != nbOutputs || ann.getNbMaxHiddenNodes() != nbMaxHiddenNodes) {
+                throw new IOException("Les génomes de " + file + " n'ont pas la forme attendue (" + nbInputs + " entrées, " + nbOutputs + " sorties)");
+            }
+
+            ann.setActivation(activation); // Les génomes seront réévalués dans ce nouvel apprentissage
+            ann.first = false;
+        }
+
+        anns.get(0).first = true; // Marquer le premier membre de l'espèce
+
+        System.out.println("Population de départ : " + anns.size() + " génomes relus de " + file);
+
+        return new Specie(C1, C2, C3, tauxMutation, anns);
+    }
+
     /*
      * Génère une population de départ, avec une espèce, et une population de taille
      * fixe, sans connexions
@@ -65,7 +236,8 @@ public class Main {
         ArrayList<ANN> anns = new ArrayList<>();
 
         for (int x = 0; x < numberOfGenomes; x++) {
-            ANN ann = new ANN(new ArrayList<>(), nbInputs, nbOutputs, nbMaxHiddenNodes);
+            ANN ann = new ANN(new ConnectionGenes(), nbInputs, nbOutputs, nbMaxHiddenNodes);
+            ann.setActivation(activation);
 
             if (x == 0) { // Marquer le premier membre de l'espèce
                 ann.first = true;
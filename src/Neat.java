@@ -1,8 +1,13 @@
 import Genome.ANN;
-import Genome.ConnectionGene;
+import Genome.Network;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
 
 
 /*
@@ -11,6 +16,9 @@ import java.util.Collections;
  */
 public class Neat {
     public static int[] targetOutput = new int[]{0, 1, 1, 0}; // La sortie du XOR désirée
+    private static final int REPRODUCTION_GRAIN = 4; // Nombre d'enfants faits d'affilée par une tâche
+    private static final int DISTANCIATION_GRAIN = 8; // Nombre d'enfants mesurés d'affilée par une tâche
+    private static final float[] xorInputs = new float[]{0, 0, 0, 1, 1, 0, 1, 1}; // Les 4 entrées du XOR, un échantillon après l'autre
 
     private final ArrayList<Specie> Species;
     private final int populationSize;
@@ -20,6 +28,24 @@ public class Neat {
     private final double C3;
     private final double thresholdDistanciation; //
     private final int tauxMutation; // Taux de mutation en %
+    private final Compatibility compatibility; // Calcul de la distance entre un enfant et le membre représentatif d'une espèce
+    private final ThreadLocal<Compatibility> compatibilities; // Idem, pour chaque thread de la distanciation en parallèle
+    private final ForkJoinPool pool; // Threads utilisés pour les calculs en parallèle
+    private FitnessEvaluator evaluator; // Évaluation des génomes de toute la population
+    private InnovationRegistry innovations = new InnovationRegistry(); // N° d'innovation de chaque connexion, communs à toutes les espèces
+    private int tournamentSize = 1; // Nombre de génomes tirés pour choisir chaque parent (1 = tirage uniforme)
+    private long seed = System.nanoTime(); // Graine des générateurs de la reproduction
+    private int generation; // Numéro de la génération en cours
+    private double specialisationThreshold = Double.POSITIVE_INFINITY; // Fit à partir duquel un génome est compilé en classe spécialisée
+    private Checkpoint checkpoint; // Sauvegarde de l'état pendant l'apprentissage (null = aucune)
+    private int checkpointInterval; // Nombre de générations entre 2 sauvegardes
+    private GenerationJournal journal; // Journal des générations (null = aucun)
+    private final long[] phases = new long[GenerationJournal.PHASES.length]; // Durée de chaque phase de la dernière génération, en ns
+    private long nextGenomeId; // N° du prochain génome
+    private ArrayList<Specie> parents; // Espèce de chaque enfant de la génération en cours, entre breed et birth
+    private Specie.Offspring[] offsprings; // Enfants croisés et mutés, sans leurs nouveaux n° d'innovation, entre breed et birth
+    private ArrayList<ANN> children; // Enfants terminés, entre birth et settle
+    private int savedSpecieNumber; // Dernier n° d'espèce de la sauvegarde relue, rétabli par resume
 
 
     /*
@@ -32,8 +58,20 @@ public class Neat {
      * @param thresholdDistanciation
      */
     public Neat(Specie specie, int populationSize, int nbMaxStable, double c1, double c2, double c3, double thresholdDistanciation, int tauxMutation) {
-        Species = new ArrayList<>();
-        Species.add(specie);
+        this(specie, populationSize, nbMaxStable, c1, c2, c3, thresholdDistanciation, tauxMutation, Runtime.getRuntime().availableProcessors());
+    }
+
+    /*
+     * Constructeur de la classe Neat
+     * @param nbThreads : Nombre de threads pour les calculs en parallèle (1 = séquentiel)
+     */
+    public Neat(Specie specie, int populationSize, int nbMaxStable, double c1, double c2, double c3, double thresholdDistanciation, int tauxMutation, int nbThreads) {
+        this(new ArrayList<>(Collections.singletonList(specie)), populationSize, nbMaxStable, c1, c2, c3, thresholdDistanciation, tauxMutation, nbThreads);
+    }
+
+    // Constructeur à partir de plusieurs espèces (population relue d'une sauvegarde)
+    Neat(ArrayList<Specie> species, int populationSize, int nbMaxStable, double c1, double c2, double c3, double thresholdDistanciation, int tauxMutation, int nbThreads) {
+        Species = species;
         this.populationSize = populationSize;
         this.nbMaxStable = nbMaxStable;
         C1 = c1;
@@ -41,20 +79,200 @@ public class Neat {
         C3 = c3;
         this.thresholdDistanciation = thresholdDistanciation;
         this.tauxMutation = tauxMutation;
+        compatibility = new Compatibility(c1, c2, c3);
+        compatibilities = ThreadLocal.withInitial(() -> new Compatibility(c1, c2, c3));
+        pool = new ForkJoinPool(nbThreads);
+        evaluator = new ParallelFitnessEvaluator(pool);
+
+        // Numéroter les génomes de départ
+        for (Specie specie : species) {
+            for (ANN ann : specie.getANNs()) {
+                if (ann.id == -1) {
+                    ann.id = nextGenomeId++;
+                }
+            }
+        }
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    // Fixer la graine de la reproduction : avec la même graine, on obtient les mêmes générations quel que soit le nombre de threads
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    // Choisir les parents par tournoi parmi tournamentSize génomes, dans toutes les espèces (actuelles et futures)
+    public void setTournamentSize(int tournamentSize) {
+        this.tournamentSize = tournamentSize;
+
+        for (Specie specie : Species) {
+            specie.setTournamentSize(tournamentSize);
+        }
+    }
+
+    public InnovationRegistry getInnovations() {
+        return innovations;
+    }
+
+    // Partager le registre d'innovations avec d'autres populations (îles), avant le début de l'apprentissage
+    public void setInnovations(InnovationRegistry innovations) {
+        this.innovations = innovations;
+    }
+
+    /*
+     * Enregistre les connexions des génomes de la population qui n'ont pas encore
+     * de n° d'innovation (population de départ relue d'un fichier), pour que les
+     * mutations ne réutilisent pas leurs n°. À appeler après setInnovations.
+     */
+    public void registerInnovations() {
+        for (Specie specie : Species) {
+            for (ANN ann : specie.getANNs()) {
+                for (int i = 0; i < ann.genes.size(); i++) {
+                    if (innovations.get(ann.genes.getInto(i), ann.genes.getOut(i)) == -1) {
+                        innovations.register(ann.genes.getInto(i), ann.genes.getOut(i), ann.genes.getInnovation(i));
+                    }
+                }
+            }
+        }
+    }
+
+    // Retourne tous les génomes de la population, espèce après espèce
+    public ArrayList<ANN> getPopulation() {
+        ArrayList<ANN> rslt = new ArrayList<>();
+
+        for (Specie specie : Species) {
+            rslt.addAll(specie.getANNs());
+        }
+
+        return rslt;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public int getNbSpecies() {
+        return Species.size();
+    }
+
+    /*
+     * Sauvegarder l'état de l'apprentissage dans file toutes les interval
+     * générations (l'écriture se fait en arrière-plan, voir Checkpoint)
+     */
+    public void setCheckpoint(Path file, int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Intervalle de sauvegarde invalide : " + interval);
+        }
+
+        checkpoint = new Checkpoint(file);
+        checkpointInterval = interval;
+    }
+
+    /*
+     * Écrire un enregistrement par génération dans le journal file (écrit en
+     * arrière-plan, voir GenerationJournal). Un journal existant est continué à
+     * partir de la génération actuelle.
+     */
+    public void setJournal(Path file) throws IOException {
+        journal = new GenerationJournal(file, generation);
+    }
+
+    // Durée de chaque phase (GenerationJournal.EVALUATION...) de la dernière génération, en ns
+    public long getPhase(int phase) {
+        return phases[phase];
+    }
+
+    /*
+     * Reprend un apprentissage à partir d'une sauvegarde : learn continue alors
+     * exactement comme l'apprentissage sauvegardé. L'évaluation des génomes et
+     * le seuil de compilation sont à fixer à nouveau. La numérotation des espèces,
+     * commune à tout le processus, reprend au n° sauvegardé : à n'appeler que
+     * pour une seule population à la fois (voir Checkpoint).
+     */
+    public static Neat resume(Path file, int nbThreads) throws IOException {
+        Neat neat = Checkpoint.load(file, nbThreads);
+        Specie.setLastSpecieNumber(neat.savedSpecieNumber);
+
+        return neat;
+    }
+
+    ArrayList<Specie> getSpecies() {
+        return Species;
+    }
+
+    int getFixedPopulationSize() {
+        return populationSize;
+    }
+
+    int getNbMaxStable() {
+        return nbMaxStable;
+    }
+
+    double getC1() {
+        return C1;
+    }
+
+    double getC2() {
+        return C2;
+    }
+
+    double getC3() {
+        return C3;
+    }
+
+    double getThresholdDistanciation() {
+        return thresholdDistanciation;
+    }
+
+    int getTauxMutation() {
+        return tauxMutation;
+    }
+
+    int getTournamentSize() {
+        return tournamentSize;
+    }
+
+    void setGeneration(int generation) {
+        this.generation = generation;
+    }
+
+    long getNextGenomeId() {
+        return nextGenomeId;
+    }
+
+    void setNextGenomeId(long nextGenomeId) {
+        this.nextGenomeId = nextGenomeId;
+    }
+
+    void setSavedSpecieNumber(int specieNumber) {
+        savedSpecieNumber = specieNumber;
+    }
+
+    // Remplacer l'évaluation des génomes (par défaut en parallèle sur les threads de Neat)
+    public void setFitnessEvaluator(FitnessEvaluator evaluator) {
+        this.evaluator = evaluator;
+    }
+
+    // Compiler en classe spécialisée chaque génome atteignant ce fit (désactivé par défaut, seul le champion final l'est)
+    public void setSpecialisationThreshold(double specialisationThreshold) {
+        this.specialisationThreshold = specialisationThreshold;
     }
 
     // Méthode statique permettant d'évaluer un ANN selon le XOR
     public static double[] evaluateXor(ANN ann) {
         double[] outputs = new double[4];
-        int cpt = 0;
-
-        // Évaluer le réseau avec les 4 entrées possibles du XOR (00, 01, 10, 11)
-        for (int i = 0; i < 2; i++) {
-            for (int j = 0; j < 2; j++) {
-                float[] inputs = new float[]{i, j};
-                outputs[cpt] = ann.evaluateNetwork(inputs)[0];
-                cpt++;
-            }
+        float[] output = new float[4];
+
+        // Partir d'un réseau neuf : le fit d'un réseau avec boucle ne dépend pas de ses évaluations précédentes
+        ann.resetState();
+
+        // Évaluer le réseau avec les 4 entrées possibles du XOR (00, 01, 10, 11) en un seul lot
+        ann.evaluateBatch(xorInputs, 4, Network.Layout.RowMajor, output);
+
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = output[i];
         }
 
         return outputs;
@@ -86,75 +304,214 @@ public class Neat {
         return fitness;
     }
 
-    // Apprentissage principal, ou se trouve la boucle principale
+    /*
+     * Apprentissage principal, ou se trouve la boucle principale. maxIterations
+     * compte aussi les générations faites avant une reprise (voir resume).
+     */
     public ANN learn(double threshold, int maxIterations) {
         double score = 0; // Fitness du meilleur génome
-        int cpt = 0;
         ANN bestANN = null;
 
+        if (generation > 0) { // Reprise : on repart du meilleur génome de la population sauvegardée
+            bestANN = calcBestFit();
+            score = bestANN != null ? bestANN.fit : 0;
+        }
 
         // Boucler sur le score du meilleur génome tant que la précision < threshold (0.01) ou que l'on ait atteint le nombre d'itérations max
-        while (score < threshold && cpt < maxIterations) {
-            System.out.println("\nIteration " + cpt + " | Condition : " + score + " >= " + threshold);
+        while (score < threshold && generation < maxIterations) {
+            System.out.println("\nIteration " + generation + " | Condition : " + score + " >= " + threshold);
+
+            bestANN = step();
 
-            // Donc : Specie contient plusieurs Génomes, un Génome = ANN qui contient plusieurs Gènes, un Gene = NodeGene + ConnectionGene
-            // Donc en gros, comme Specie est une espèce, elle possède plusieurs génomes (ANN), et donc à chaque fois qu'on doit calculer le fit et retirer les génomes faibles, on doit le faire sur des ANN
+            System.out.println("\tNombre d'espèces : " + Species.size());
 
             for (Specie specie : Species) {
-                specie.adjustedFit(); // Calcul du fit ajusté de chaque espèce
-                specie.sortANNs(); // Trier les génomes du meilleur au pire
-                specie.removeWeaks(); // Retirer génomes les plus faibles par espèce (garder que la première moitié)
+                System.out.println("\t\t" + specie);
             }
 
-            // Retirer les espèces stables
-            removeStables();
+            score = bestANN.fit;
+            System.out.println("\tMeilleur ANN : " + bestANN);
 
-            int size = getPopulationSize();
-            int numChildren = populationSize - size;
-            ArrayList<Integer> childPerSpecies = getNumChildPerSpecies(numChildren);
+            if (checkpoint != null && generation % checkpointInterval == 0) {
+                flushJournal(); // Sur le disque avant la sauvegarde : le journal n'est jamais en retard sur celle dont on repartira
+                checkpoint.save(this);
+            }
+        }
 
-            ArrayList<ANN> children = new ArrayList<>();
+        if (checkpoint != null) {
+            checkpoint.await(); // La dernière sauvegarde doit être terminée avant de rendre la main
+        }
 
-            // Boucler pour chaque espèce restante afin de faire des nouveaux children
-            for (int i = 0; i < Species.size(); i++) {
-                children.addAll(Species.get(i).crossANNs(childPerSpecies.get(i)));
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Écriture du journal impossible : " + e);
             }
 
-            // Mettre chaque enfant dans une espèce
-            distanciation(children);
+            journal = null;
+        }
 
-            // Calculer le fit de chaque espèce et trouver le génome ayant le score le plus élevé
-            System.out.println("\tNombre d'espèces : " + Species.size());
+        if (generation >= maxIterations) {
+            System.out.println("\nNombre d'itérations maximum (" + maxIterations + ") atteint !");
+        } else {
+            System.out.println("\nScore suffisant (" + score + " sur " + threshold + ") atteint en " + generation + " itérations !");
+        }
 
-            for (Specie specie : Species) {
-                System.out.println("\t\t" + specie);
-            }
+        // Le champion est compilé en classe spécialisée pour les évaluations qui suivront
+        if (bestANN != null) {
+            bestANN.specialise();
+        }
 
-            bestANN = calcBestFit();
+        return bestANN;
+    }
 
-            double[] outputs = evaluateXor(bestANN);
-            bestANN.fit = fitXor(outputs);
-            score = bestANN.fit;
-            System.out.println("\tMeilleur ANN : " + bestANN);
+    /*
+     * Fait évoluer la population d'une génération et retourne son meilleur génome
+     * (null si tous les fits sont nuls). learn l'appelle en boucle, mais plusieurs
+     * populations peuvent aussi être avancées ensemble, génération par génération
+     * (voir Islands, qui appelle séparément ses 3 étapes : breed, birth et settle).
+     */
+    public ANN step() {
+        breed();
+        birth();
 
-            cpt++;
+        return settle();
+    }
+
+    /*
+     * Première étape d'une génération : évaluation, sélection, puis croisements et
+     * mutations en parallèle. Les nouvelles connexions n'ont pas encore de n°
+     * d'innovation (voir birth).
+     */
+    void breed() {
+        // Donc : Specie contient plusieurs Génomes, un Génome = ANN qui contient plusieurs Gènes, un Gene = NodeGene + ConnectionGene
+        // Donc en gros, comme Specie est une espèce, elle possède plusieurs génomes (ANN), et donc à chaque fois qu'on doit calculer le fit et retirer les génomes faibles, on doit le faire sur des ANN
+
+        long start = System.nanoTime();
+        evaluatePopulation();
+        long evaluated = System.nanoTime();
+
+        for (Specie specie : Species) {
+            specie.adjustedFit(); // Calcul du fit ajusté de chaque espèce
+            specie.removeWeaks(); // Retirer génomes les plus faibles par espèce (garder que la meilleure moitié)
         }
 
-        if (cpt == maxIterations) {
-            System.out.println("\nNombre d'itérations maximum (" + maxIterations + ") atteint !");
-        } else {
-            System.out.println("\nScore suffisant (" + score + " sur " + threshold + ") atteint en " + cpt + " itérations !");
+        // Retirer les espèces stables
+        removeStables();
+        long selected = System.nanoTime();
+
+        int size = getPopulationSize();
+        int numChildren = populationSize - size;
+        ArrayList<Integer> childPerSpecies = getNumChildPerSpecies(numChildren);
+
+        // Faire les nouveaux enfants de chaque espèce restante
+        crossover(childPerSpecies);
+        long crossed = System.nanoTime();
+
+        phases[GenerationJournal.EVALUATION] = evaluated - start;
+        phases[GenerationJournal.SELECTION] = selected - evaluated;
+        phases[GenerationJournal.REPRODUCTION] = crossed - selected;
+    }
+
+    /*
+     * Deuxième étape : termine les enfants un par un, dans l'ordre, en donnant leur
+     * n° d'innovation aux nouvelles connexions. C'est la seule étape qui attribue
+     * des n° : des populations partageant un registre (îles) la font l'une après
+     * l'autre, les n° ne dépendent alors pas des threads.
+     */
+    void birth() {
+        long start = System.nanoTime();
+        children = new ArrayList<>(offsprings.length);
+
+        for (int i = 0; i < offsprings.length; i++) {
+            children.add(parents.get(i).birth(offsprings[i], innovations));
+        }
+
+        parents = null;
+        offsprings = null;
+        phases[GenerationJournal.REPRODUCTION] += System.nanoTime() - start;
+    }
+
+    // Dernière étape : placement des enfants dans les espèces et évaluation, retourne le meilleur génome
+    ANN settle() {
+        long start = System.nanoTime();
+
+        // Mettre chaque enfant dans une espèce
+        distanciation(children);
+        children = null;
+        long placed = System.nanoTime();
+
+        // Calculer le fit de chaque espèce et trouver le génome ayant le score le plus élevé (les enfants y sont évalués)
+        ANN bestANN = calcBestFit();
+        long end = System.nanoTime();
+
+        phases[GenerationJournal.EVALUATION] += end - placed;
+        phases[GenerationJournal.DISTANCIATION] = placed - start;
+
+        if (journal != null) {
+            journal.append(generation, Species, phases, bestANN);
         }
 
+        generation++;
+
         return bestANN;
     }
 
+    // Écrit les enregistrements du journal en attente
+    private void flushJournal() {
+        if (journal != null) {
+            try {
+                journal.flush();
+            } catch (IOException e) {
+                System.err.println("Écriture du journal impossible : " + e);
+            }
+        }
+    }
+
+    /*
+     * Ajoute à la population des génomes venus d'une autre population (des copies,
+     * qui lui appartiennent ensuite), placés dans les espèces comme des enfants. La
+     * population dépasse alors sa taille jusqu'à la génération suivante, qui fera
+     * moins d'enfants. Le registre d'innovations étant partagé, leurs connexions y
+     * ont déjà leur n°.
+     */
+    public void immigrate(List<ANN> immigrants) {
+        place(new ArrayList<>(immigrants));
+    }
+
+    /*
+     * Fait les enfants de toutes les espèces en parallèle. Chaque enfant a son propre
+     * générateur, tiré dans l'ordre à partir de la graine et du numéro de génération,
+     * puis les enfants sont terminés un par un dans ce même ordre (birth) : le
+     * résultat ne dépend pas du nombre de threads.
+     */
+    private void crossover(ArrayList<Integer> childPerSpecies) {
+        SplittableRandom random = new SplittableRandom(new SplittableRandom(seed + generation).nextLong());
+        ArrayList<SplittableRandom> randoms = new ArrayList<>();
+        parents = new ArrayList<>();
+
+        for (int i = 0; i < Species.size(); i++) {
+            if (Species.get(i).getANNs().size() > 0) {
+                for (int j = 0; j < childPerSpecies.get(i); j++) {
+                    parents.add(Species.get(i));
+                    randoms.add(random.split());
+                }
+            }
+        }
+
+        offsprings = new Specie.Offspring[parents.size()];
+
+        Parallel.forEach(pool, offsprings.length, REPRODUCTION_GRAIN, i -> offsprings[i] = parents.get(i).crossANN(randoms.get(i)));
+    }
+
     // Va retirer les espèces stables
     private void removeStables() {
         ArrayList<Specie> toRemove = new ArrayList<>();
+        Specie bestSpecie = getBestFitSpecie();
 
         for (Specie specie : Species) {
-            if (specie.getStableCounter() >= nbMaxStable && getBestFitSpecie() != specie) {
+            if (specie.getStableCounter() >= nbMaxStable && bestSpecie != specie) {
                 toRemove.add(specie);
             }
         }
@@ -168,89 +525,133 @@ public class Neat {
     // E = nombre de gènes supplémentaires (excessifs)
     // D = nombre de gènes disjoints
     // W = différence de poids moyenne sur les gènes communs
-    // Va répartir tous les enfants dans les bonnes espèces ou va en créer des nouvelles
+    // Va répartir tous les enfants dans les bonnes espèces ou va en créer des nouvelles, en 2 temps :
+    // - en parallèle, E, D et W sont mesurés entre chaque enfant et le membre représentatif de chaque espèce existante (ils ne changent pas pendant la répartition).
+    //   Seul N augmente quand une espèce reçoit des enfants : avec le plus grand N possible, on écarte déjà les espèces trop éloignées
+    // - un par un dans l'ordre, chaque enfant est mis dans l'espèce au delta minimum avec le N du moment, les nouvelles espèces étant comparées directement
+    // Le résultat est le même que celui de la répartition enfant par enfant
     private void distanciation(ArrayList<ANN> enfants) {
+        ArrayList<Boolean> stables = place(enfants);
+
+        // Incrémenter le compteur de stabilité si l'espèce n'a pas du tout changée
+        for (int i = 0; i < stables.size(); i++) {
+            if (!stables.get(i)) {
+                Species.get(i).incrementStableCounter();
+            }
+        }
+    }
+
+    // Répartit les génomes dans les espèces et retourne, pour chaque espèce, si elle en a reçu
+    private ArrayList<Boolean> place(ArrayList<ANN> enfants) {
+        int nbSpecies = Species.size(); // Espèces existantes, mesurées en parallèle
         ArrayList<Boolean> stables = new ArrayList<>();
+        ANN[] firstMembres = new ANN[nbSpecies + enfants.size()]; // Membre représentatif de chaque espèce
+        int[] larger = new int[nbSpecies + enfants.size()]; // N de chaque espèce, mis à jour au fur et à mesure
+        int largerChild = 0;
 
-        for (int i = 0; i < Species.size(); i++) {
+        for (int i = 0; i < nbSpecies; i++) {
             stables.add(false);
+            firstMembres[i] = Species.get(i).getFirstANN();
+            larger[i] = Species.get(i).getLargerANN();
         }
 
-        ArrayList<Double> deltas = new ArrayList<>();
-        ArrayList<Integer> especes = new ArrayList<>();
-
         for (ANN enfant : enfants) {
+            largerChild = Math.max(largerChild, enfant.genes.size());
+        }
 
-            for (int i = 0; i < Species.size(); i++) {
-                Specie espece = Species.get(i);
+        int[] largest = new int[nbSpecies]; // Le plus grand N que chaque espèce pourra avoir
 
-                // On teste la distance avec le premier membre de l'espèce (son créateur)
-                ANN firstMembre = espece.getFirstANN();
+        for (int i = 0; i < nbSpecies; i++) {
+            largest[i] = Math.max(larger[i], largerChild);
+        }
+
+        // E, D et W de chaque enfant avec chaque espèce existante (E = -1 si l'espèce est écartée)
+        int[] excess = new int[enfants.size() * nbSpecies];
+        int[] disjoint = new int[excess.length];
+        double[] weightDifference = new double[excess.length];
 
-                int n = espece.getLargerANN();
+        Parallel.forEach(pool, enfants.size(), DISTANCIATION_GRAIN, j -> {
+            Compatibility measure = compatibilities.get();
+            ANN enfant = enfants.get(j);
 
-                int e = espece.excessElements(firstMembre.conGeneList, enfant.conGeneList).size();
-                int d = espece.disjointsElements(firstMembre.conGeneList, enfant.conGeneList).size();
+            for (int i = 0; i < nbSpecies; i++) {
+                int cell = j * nbSpecies + i;
 
-                ArrayList<ConnectionGene[]> genomesCommuns = espece.commonsElements(firstMembre.conGeneList, enfant.conGeneList);
+                if (measure.distance(firstMembres[i].genes, enfant.genes, largest[i], thresholdDistanciation) == Double.POSITIVE_INFINITY) {
+                    excess[cell] = -1;
+                } else {
+                    excess[cell] = measure.getExcess();
+                    disjoint[cell] = measure.getDisjoint();
+                    weightDifference[cell] = measure.getWeightDifference();
+                }
+            }
+        });
 
-                double w = 0;
+        for (int j = 0; j < enfants.size(); j++) {
+            ANN enfant = enfants.get(j);
+            enfant.id = nextGenomeId++; // Numérotés dans l'ordre, comme ils sont placés
+            double deltaMin = thresholdDistanciation; // Delta de la meilleure espèce trouvée, sert de borne aux suivantes
+            int index = -1;
 
-                if (genomesCommuns.size() > 0) { // Pour éviter de faire une division par zéro pour la moyenne (d devenait NaN sinon)
-                    for (ConnectionGene[] genes : genomesCommuns) {
-                        w += (Math.abs(genes[0].getWeight() - genes[1].getWeight()));
-                    }
+            for (int i = 0; i < Species.size(); i++) {
+                double delta;
 
-                    w /= genomesCommuns.size();
-                }
+                if (i < nbSpecies) { // Déjà mesuré, on n'a plus qu'à prendre le N actuel de l'espèce
+                    int cell = j * nbSpecies + i;
 
-                double delta = 0;
+                    if (excess[cell] == -1) {
+                        continue;
+                    }
 
-                if (n > 0) { // Pour éviter de faire une division par zéro
-                    delta = (C1 * e) / n + (C2 * d) / n + C3 * w;
+                    delta = compatibility.delta(excess[cell], disjoint[cell], weightDifference[cell], larger[i]);
+                } else { // Espèce créée par un enfant précédent, on teste la distance avec son créateur
+                    delta = compatibility.distance(firstMembres[i].genes, enfant.genes, larger[i], deltaMin);
                 }
 
-                // IF delta > threshold --> Nouvelle espèce, ELSE on l'ajoute à la liste des espèces possibles
-                if (delta <= thresholdDistanciation) {
-                    deltas.add(delta);
-                    especes.add(i);
+                // IF delta > threshold --> Nouvelle espèce, ELSE on garde l'espèce si son delta est le plus petit (la première en cas d'égalité)
+                if (delta <= thresholdDistanciation && (index == -1 || delta < deltaMin)) {
+                    deltaMin = delta;
+                    index = i;
                 }
             }
 
-            // Parcourir toutes les espèces et calculer leurs delta <= thresholdDistanciation, et mettre l'enfant dans celle qui a le meilleur. Si on n'a pas pû ajouter l'enfant, on crée une nouvelle espèce
-            if (deltas.size() > 0) { // On a au moins une espèce dans laquelle on peut ajouter l'enfant
-                double deltaMin = Collections.min(deltas); // Mettre l'enfant dans l'espèce qui a le delta minimum
-                int index = especes.get(deltas.indexOf(deltaMin));
+            // Mettre l'enfant dans l'espèce qui a le delta minimum. Si on n'a pas pû ajouter l'enfant, on crée une nouvelle espèce
+            if (index != -1) { // On a au moins une espèce dans laquelle on peut ajouter l'enfant
                 Species.get(index).addANN(enfant);
                 stables.set(index, true);
                 Species.get(index).resetStableCounter(); // Reset le compteur de stabilité
+                larger[index] = Math.max(larger[index], enfant.genes.size());
             } else { // L'enfant n'a pû être ajouté à aucune des espèces, on en crée une nouvelle
                 enfant.first = true; // Il crée l'espèce
                 Specie nouvelle = new Specie(C1, C2, C3, tauxMutation, enfant);
+                nouvelle.setTournamentSize(tournamentSize);
+                firstMembres[Species.size()] = enfant;
+                larger[Species.size()] = enfant.genes.size();
                 Species.add(nouvelle);
                 stables.add(false);
             }
         }
 
-        // Incrémenter le compteur de stabilité si l'espèce n'a pas du tout changée
-        for (int i = 0; i < stables.size(); i++) {
-            if (!stables.get(i)) {
-                Species.get(i).incrementStableCounter();
-            }
-        }
+        return stables;
     }
 
     // Calculer le fit de chaque espèce et trouver le génome ayant le score le plus élevé
     private ANN calcBestFit() {
-        double bestFit = 0;
         ANN bestANN = null;
 
+        evaluatePopulation();
+
         for (Specie specie : Species) {
             specie.computeFit();
 
+            for (ANN ann : specie.getANNs()) {
+                if (ann.fit >= specialisationThreshold && !ann.isSpecialised()) {
+                    ann.specialise();
+                }
+            }
+
             ANN tmp = specie.bestANN();
-            if (tmp.fit > bestFit) {
-                bestFit = tmp.fit;
+            if (bestANN == null || tmp.fit > bestANN.fit) {
                 bestANN = tmp;
             }
         }
@@ -263,6 +664,8 @@ public class Neat {
         Specie bestSpecie = Species.get(0);
         double bestFit = 0;
 
+        evaluatePopulation();
+
         for (Specie specie : Species) {
             specie.computeFit();
 
@@ -276,6 +679,23 @@ public class Neat {
         return bestSpecie;
     }
 
+    // Calculer en une seule fois le fit de tous les génomes de la population qui ne sont pas encore évalués
+    private void evaluatePopulation() {
+        ArrayList<ANN> population = new ArrayList<>();
+
+        for (Specie specie : Species) {
+            for (ANN ann : specie.getANNs()) {
+                if (!ann.isEvaluated()) {
+                    population.add(ann);
+                }
+            }
+        }
+
+        if (population.size() > 0) {
+            evaluator.evaluate(population);
+        }
+    }
+
     // Obtenir la taille totale de la population
     private int getPopulationSize() {
         int size = 0;
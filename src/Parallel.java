@@ -0,0 +1,56 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/*
+ * Boucles parallèles sur un ForkJoinPool : l'intervalle [0, size) est coupé en
+ * deux jusqu'à obtenir des blocs d'au plus grain éléments, répartis entre les
+ * threads du pool. Retourne une fois toutes les itérations terminées, leurs
+ * écritures étant alors visibles par l'appelant.
+ */
+public final class Parallel {
+
+    private Parallel() {
+    }
+
+    public static void forEach(ForkJoinPool pool, int size, int grain, IntConsumer body) {
+        if (size <= grain || pool.getParallelism() == 1) { // Pas la peine de passer par le pool
+            for (int i = 0; i < size; i++) {
+                body.accept(i);
+            }
+
+            return;
+        }
+
+        pool.invoke(new Range(0, size, grain, body));
+    }
+
+    // Tâche traitant les itérations de start (inclus) à end (exclus)
+    private static final class Range extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int start;
+        private final int end;
+        private final int grain;
+        private final IntConsumer body;
+
+        private Range(int start, int end, int grain, IntConsumer body) {
+            this.start = start;
+            this.end = end;
+            this.grain = grain;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= grain) {
+                for (int i = start; i < end; i++) {
+                    body.accept(i);
+                }
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new Range(start, middle, grain, body), new Range(middle, end, grain, body));
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+import Genome.ANN;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+ * Évalue les génomes selon le XOR en parallèle sur un ForkJoinPool. Chaque ANN
+ * n'est évalué que par un seul thread à la fois et possède son propre état
+ * (valeurs des noeuds), le résultat est donc identique à une évaluation
+ * séquentielle.
+ */
+public class ParallelFitnessEvaluator implements FitnessEvaluator {
+    private static final int GRAIN = 8; // Nombre de génomes évalués d'affilée par une tâche
+
+    private final ForkJoinPool pool;
+
+    public ParallelFitnessEvaluator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void evaluate(List<ANN> anns) {
+        Parallel.forEach(pool, anns.size(), GRAIN, i -> {
+            ANN ann = anns.get(i);
+            ann.setFit(Neat.fitXor(Neat.evaluateXor(ann)));
+        });
+    }
+}
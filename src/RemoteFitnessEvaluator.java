@@ -0,0 +1,266 @@
+import Genome.ANN;
+import Genome.GenomeCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/*
+ * Évaluation des génomes par des FitnessWorker, dans d'autres JVM, sur TCP
+ * (voir FitnessProtocol). Les génomes sont découpés en lots de batchSize, que
+ * les workers se partagent au fur et à mesure : chaque connexion a au plus
+ * window lots envoyés sans réponse, un worker lent reçoit donc moins de lots et
+ * le coordinateur n'envoie jamais plus que ce que les workers peuvent absorber.
+ *
+ * Un worker qui ne répond plus (connexion coupée, réponse invalide ou délai
+ * dépassé) est écarté pour le reste de l'évaluation, et ses lots sans réponse
+ * sont redistribués aux autres. S'il ne reste aucun worker, les génomes sont
+ * évalués localement par fallback. Les connexions sont rétablies au début de
+ * chaque évaluation.
+ *
+ * Par défaut, un worker n'a pas de délai de réponse : seul un worker dont la
+ * connexion est coupée est écarté, un worker lent n'est jamais pris pour perdu.
+ * setTimeout fixe un délai par lot, multiplié par window puisque le worker peut
+ * avoir autant de lots à évaluer avant de répondre au plus ancien.
+ *
+ * Les lots sont aussi coupés avant FitnessProtocol.MAX_BATCH_BYTES : un lot trop
+ * grand n'est donc jamais envoyé (ce n'est pas une perte de connexion), et un
+ * génome qui dépasse seul cette taille est évalué localement.
+ */
+public class RemoteFitnessEvaluator implements FitnessEvaluator, AutoCloseable {
+    private final List<InetSocketAddress> workers;
+    private final Connection[] connections; // Connexion à chaque worker, null si elle n'est pas établie
+    private final int batchSize; // Nombre de génomes par lot
+    private final int window; // Nombre de lots envoyés sans réponse au maximum, par worker
+    private final FitnessEvaluator fallback; // Évaluation locale quand aucun worker ne répond
+    private final ForkJoinPool pool; // Un thread par worker, pour envoyer les lots et lire les réponses
+    private final AtomicInteger batchCounter = new AtomicInteger(); // Pour que chaque lot ait un numéro unique
+    private static final int CONNECT_TIMEOUT = 10000; // Délai en ms pour se connecter à un worker
+
+    private int timeout = 0; // Délai en ms accordé à un worker par lot sans réponse (0 = aucun délai)
+
+
+    /*
+     * Constructeur de la classe RemoteFitnessEvaluator
+     * @param workers : Adresses des workers
+     * @param batchSize : Nombre de génomes par lot
+     * @param window : Nombre de lots envoyés à un worker sans attendre la réponse
+     * @param fallback : Évaluation locale, si aucun worker n'est joignable
+     */
+    public RemoteFitnessEvaluator(List<InetSocketAddress> workers, int batchSize, int window, FitnessEvaluator fallback) {
+        this.workers = new ArrayList<>(workers);
+        connections = new Connection[workers.size()];
+        this.batchSize = batchSize;
+        this.window = window;
+        this.fallback = fallback;
+        pool = new ForkJoinPool(Math.max(workers.size(), 1));
+    }
+
+    /*
+     * Délai en ms accordé à un worker pour évaluer un lot, au-delà duquel il est
+     * considéré comme perdu (0 = aucun délai). À fixer largement : un worker
+     * écarté à tort fait retomber l'évaluation sur fallback. Pris en compte aux
+     * prochaines connexions.
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /*
+     * Évalue les génomes. Les appels ne se font qu'un à la fois (des îles partageant
+     * les mêmes workers attendent leur tour).
+     */
+    @Override
+    public synchronized void evaluate(List<ANN> anns) {
+        ConcurrentLinkedQueue<Batch> pending = new ConcurrentLinkedQueue<>();
+        ArrayList<ANN> local = new ArrayList<>(); // Génomes trop grands pour être envoyés seuls
+
+        // Lots de batchSize génomes au plus, coupés plus tôt s'ils dépassent la taille qu'un worker accepte
+        int first = 0;
+        int bytes = GenomeCodec.HEADER_SIZE;
+
+        for (int i = 0; i < anns.size(); i++) {
+            int size = GenomeCodec.maxEncodedSize(anns.get(i));
+
+            if (GenomeCodec.HEADER_SIZE + size > FitnessProtocol.MAX_BATCH_BYTES) {
+                addBatch(pending, anns, first, i);
+                local.add(anns.get(i));
+                first = i + 1;
+                bytes = GenomeCodec.HEADER_SIZE;
+                continue;
+            }
+
+            if (i - first == batchSize || bytes + size > FitnessProtocol.MAX_BATCH_BYTES) {
+                addBatch(pending, anns, first, i);
+                first = i;
+                bytes = GenomeCodec.HEADER_SIZE;
+            }
+
+            bytes += size;
+        }
+
+        addBatch(pending, anns, first, anns.size());
+
+        if (!local.isEmpty()) {
+            fallback.evaluate(local);
+        }
+
+        boolean[] lost = new boolean[workers.size()]; // Workers écartés pendant cette évaluation
+
+        // Tant qu'il reste des lots, ceux des workers perdus ayant été remis dans la file
+        while (!pending.isEmpty()) {
+            ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
+
+            for (int i = 0; i < workers.size(); i++) {
+                if (!lost[i] && connect(i)) {
+                    int worker = i;
+                    tasks.add(pool.submit(() -> {
+                        if (!drain(worker, pending)) {
+                            lost[worker] = true;
+                        }
+                    }));
+                } else {
+                    lost[i] = true;
+                }
+            }
+
+            if (tasks.isEmpty()) { // Aucun worker joignable, le reste est évalué ici
+                ArrayList<ANN> rest = new ArrayList<>();
+
+                for (Batch batch : pending) {
+                    rest.addAll(batch.anns);
+                }
+
+                fallback.evaluate(rest);
+                return;
+            }
+
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        }
+    }
+
+    // Ajoute à la file le lot des génomes de from à to (exclu), s'il n'est pas vide
+    private void addBatch(ConcurrentLinkedQueue<Batch> pending, List<ANN> anns, int from, int to) {
+        if (from < to) {
+            pending.add(new Batch(batchCounter.incrementAndGet(), anns.subList(from, to)));
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (int i = 0; i < connections.length; i++) {
+            disconnect(i);
+        }
+
+        pool.shutdown();
+    }
+
+    /*
+     * Envoie des lots au worker et lit ses réponses jusqu'à ce que la file soit
+     * vide. Retourne false si le worker est perdu : ses lots sans réponse sont
+     * alors remis dans la file.
+     */
+    private boolean drain(int worker, ConcurrentLinkedQueue<Batch> pending) {
+        Connection connection = connections[worker];
+        ArrayDeque<Batch> inFlight = new ArrayDeque<>(); // Lots envoyés, dans l'ordre où le worker y répond
+
+        try {
+            while (true) {
+                Batch batch;
+
+                while (inFlight.size() < window && (batch = pending.poll()) != null) {
+                    inFlight.add(batch);
+                    FitnessProtocol.writeBatch(connection.out, batch.number, batch.anns);
+                }
+
+                if (inFlight.isEmpty()) {
+                    return true;
+                }
+
+                FitnessProtocol.readFits(connection.in, inFlight.peek().number, inFlight.peek().anns);
+                inFlight.poll();
+            }
+        } catch (IOException e) {
+            System.err.println("Worker " + workers.get(worker) + " perdu, " + inFlight.size() + " lots redistribués : " + e);
+            pending.addAll(inFlight);
+            disconnect(worker);
+
+            return false;
+        }
+    }
+
+    // Établit la connexion au worker si besoin, retourne false s'il n'est pas joignable
+    private boolean connect(int worker) {
+        if (connections[worker] != null) {
+            return true;
+        }
+
+        Socket socket = new Socket();
+
+        try {
+            socket.connect(workers.get(worker), CONNECT_TIMEOUT);
+            socket.setSoTimeout((int) Math.min((long) timeout * window, Integer.MAX_VALUE));
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true); // Sans délai de réponse, une machine disparue finit quand même par être détectée
+            connections[worker] = new Connection(socket);
+
+            return true;
+        } catch (IOException e) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+
+            return false;
+        }
+    }
+
+    private void disconnect(int worker) {
+        if (connections[worker] != null) {
+            try {
+                connections[worker].socket.close();
+            } catch (IOException ignored) {
+            }
+
+            connections[worker] = null;
+        }
+    }
+
+    // Connexion à un worker, avec ses flux
+    private static final class Connection {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+    }
+
+    // Lot de génomes envoyé d'un bloc à un worker
+    private static final class Batch {
+        private final int number;
+        private final List<ANN> anns;
+
+        private Batch(int number, List<ANN> anns) {
+            this.number = number;
+            this.anns = anns;
+        }
+    }
+}
@@ -1,26 +1,29 @@
 import Genome.ANN;
-import Genome.ConnectionGene;
-import Genome.Innovation;
+import Genome.ConnectionGenes;
+import Genome.NodeRoles;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 
 // Classe contenant une espèce, qui va contenir plusieurs individus (des ANN). Va faire les calculs des fits, retirer les génomes faibles et toute la reproduction.
 
 public class Specie {
     private static final AtomicInteger SpecieCounter = new AtomicInteger(); // Pour que chaque espèce ait un numéro unique
+    private static final int MAX_ATTEMPTS = 32; // Tirages au hasard d'une connexion avant de choisir parmi les paires valides
+    private static final ThreadLocal<LongHashSet> childInnovations = ThreadLocal.withInitial(LongHashSet::new); // N° d'innovation de l'enfant en construction (un par thread)
+    private static final ThreadLocal<LongHashSet> childConnections = ThreadLocal.withInitial(LongHashSet::new); // Connexions (entrée, sortie) de l'enfant en construction
     private final double C1; // Coefficients de la formule de distanciation
     private final double C2;
     private final double C3;
     private final int tauxMutation; // Taux de mutation en %
     private final int specieNumber;  // Numéro de l'espèce
     private int stableCounter;  // Compteur de générations où l'espèce n'a pas changé
-    private int globalInnovation;  // Numéro d'innovation global
+    private int tournamentSize = 1; // Nombre de génomes tirés pour choisir un parent (1 = tirage uniforme)
     private ArrayList<ANN> ANNs;  // Liste des ANN de l'espèce
     private double[] fits; // Fits de chaque génome
     private double[] adjustedFitness; // Fits ajustés de chaque génome
+    private final Compatibility compatibility; // Calcul de la distance avec le membre représentatif
 
 
     /*
@@ -31,14 +34,18 @@ public class Specie {
      * 		   tauxMutation Taux de mutation en %
      */
     private Specie(double c1, double c2, double c3, int tauxMutation) {
+        this(c1, c2, c3, tauxMutation, SpecieCounter.incrementAndGet());
+    }
+
+    private Specie(double c1, double c2, double c3, int tauxMutation, int specieNumber) {
         stableCounter = 0;
-        specieNumber = SpecieCounter.incrementAndGet();
+        this.specieNumber = specieNumber;
         adjustedFitness = new double[0];
-        globalInnovation = 0;
         C1 = c1;
         C2 = c2;
         C3 = c3;
         this.tauxMutation = tauxMutation;
+        compatibility = new Compatibility(c1, c2, c3);
     }
 
 
@@ -69,6 +76,26 @@ public class Specie {
         ANNs.add(ann);
     }
 
+    /*
+     * Constructeur d'une espèce relue d'une sauvegarde (voir Checkpoint), qui garde
+     * son numéro et son compteur de stabilité
+     */
+    Specie(double c1, double c2, double c3, int tauxMutation, int specieNumber, int stableCounter, ArrayList<ANN> anns) {
+        this(c1, c2, c3, tauxMutation, specieNumber);
+        this.stableCounter = stableCounter;
+        ANNs = anns;
+    }
+
+    // Dernier numéro d'espèce attribué
+    static int getLastSpecieNumber() {
+        return SpecieCounter.get();
+    }
+
+    // Reprendre la numérotation des espèces après une sauvegarde
+    static void setLastSpecieNumber(int specieNumber) {
+        SpecieCounter.set(specieNumber);
+    }
+
     public int getStableCounter() {
         return stableCounter;
     }
@@ -81,6 +108,14 @@ public class Specie {
         stableCounter = 0;
     }
 
+    public int getTournamentSize() {
+        return tournamentSize;
+    }
+
+    public void setTournamentSize(int tournamentSize) {
+        this.tournamentSize = tournamentSize;
+    }
+
     public int getSpecieNumber() {
         return specieNumber;
     }
@@ -101,20 +136,15 @@ public class Specie {
         return adjustedFitness;
     }
 
-    public int getGlobalInnovation() {
-        return globalInnovation;
-    }
-
     /*
-     * Calcul des fits de chaque ANN de l'espèce
+     * Récupère les fits de chaque ANN de l'espèce, calculés au préalable pour toute
+     * la population par Neat
      */
     public double[] computeFit() {
         fits = new double[ANNs.size()];
 
         for (int i = 0; i < ANNs.size(); i++) {
-            double[] outputs = Neat.evaluateXor(ANNs.get(i));
-            fits[i] = Neat.fitXor(outputs);
-            ANNs.get(i).fit = fits[i];
+            fits[i] = ANNs.get(i).fit;
         }
 
         return fits;
@@ -133,14 +163,12 @@ public class Specie {
         return max;
     }
 
-    // Va retourner l'ANN possédant le meilleur fit
+    // Va retourner l'ANN possédant le meilleur fit (le premier en cas d'égalité, même si tous ont un fit nul)
     public ANN bestANN() {
-        double max = 0;
         ANN bestANN = null;
 
         for (ANN ann : ANNs) {
-            if (ann.fit > max) {
-                max = ann.fit;
+            if (bestANN == null || ann.fit > bestANN.fit) {
                 bestANN = ann;
             }
         }
@@ -161,215 +189,172 @@ public class Specie {
         }
     }
 
-    // Trier les génomes (ANNs) selon leurs fits (du meilleur au pire)
-    public void sortANNs() {
-        ANNs.sort(ANN::compareTo);
-    }
-
-    // Va retirer les génomes les plus faibles (ne garde que la première moitié)
+    /*
+     * Va retirer les génomes les plus faibles (ne garde que la meilleure moitié). Les
+     * meilleurs sont trouvés par quickselect sur les fits, sans trier toute l'espèce,
+     * puis seule la moitié gardée est triée : l'espèce reste rangée du meilleur au
+     * pire, comme avec un tri stable par fit décroissant.
+     */
     public void removeWeaks() {
-        if (ANNs.size() > 1) { // Faire en sorte que l'espèce ait toujours au moins un seul enfant
-            int half = ANNs.size() / 2 + (ANNs.size() % 2); // Obtenir la moitié
-
-            ANN oldFirst = getFirstANN();
+        int size = ANNs.size();
 
-            ArrayList<ANN> toRemove = new ArrayList<>();
+        if (size > 1) { // Faire en sorte que l'espèce ait toujours au moins un seul enfant
+            int half = size / 2 + (size % 2); // Obtenir la moitié
 
-            for (int i = 0; i < ANNs.size(); i++) {
-                if (i >= half) {
-                    toRemove.add(ANNs.get(i));
-                }
-            }
+            ANN oldFirst = getFirstANN();
 
-            ANNs.removeAll(toRemove);
+            int[] order = new int[size];
+            double[] fit = new double[size];
 
-            // Si le first n'est plus dans la liste, on recalcule un nouveau first
-            if (!ANNs.contains(oldFirst)) {
-                calcFirstANN(oldFirst);
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+                fit[i] = ANNs.get(i).fit;
             }
-        }
-    }
-
-    // delta = (C1 * E) / N + (C2 * D) / N + C3 * W
-    // C1, C2, C3 sont des coefficients à ajuster (dans exemple : 2, 2, 0.5)
-    // N = nombre de gènes du génome le plus grand
-    // E = nombre de gènes supplémentaires (excessifs)
-    // D = nombre de gènes disjoints
-    // W = différence de poids moyenne sur les gènes communs
-    // Permet de calculer l'ANN qui deviendra le nouveau membre représentatif de l'espèce
-    public void calcFirstANN(ANN firstMembre) {
-        // On teste la distance avec le premier membre de l'espèce (son créateur)
-        ArrayList<Double> deltas = new ArrayList<>();
-        ArrayList<Integer> genomes = new ArrayList<>();
 
-        for (int i = 0; i < ANNs.size(); i++) {
-            ANN genomeAComparer = ANNs.get(i);
-
-
-            int n = getLargerANN();
-
-            int e = excessElements(firstMembre.conGeneList, genomeAComparer.conGeneList).size();
-            int d = disjointsElements(firstMembre.conGeneList, genomeAComparer.conGeneList).size();
-
-            ArrayList<ConnectionGene[]> genomesCommuns = commonsElements(firstMembre.conGeneList, genomeAComparer.conGeneList);
-
-            double w = 0;
+            select(order, fit, half);
+            sort(order, fit, 0, half - 1);
 
-            if (genomesCommuns.size() > 0) { // Pour éviter de faire une division par zéro pour la moyenne (d devenait NaN sinon)
-                for (ConnectionGene[] genes : genomesCommuns) {
-                    w += (Math.abs(genes[0].getWeight() - genes[1].getWeight()));
-                }
+            ANN[] kept = new ANN[half];
 
-                w /= genomesCommuns.size();
+            for (int i = 0; i < half; i++) {
+                kept[i] = ANNs.get(order[i]);
             }
 
-            double delta = 0;
-
-            if (n > 0) { // Pour éviter de faire une division par zéro
-                delta = (C1 * e) / n + (C2 * d) / n + C3 * w;
+            for (int i = 0; i < half; i++) {
+                ANNs.set(i, kept[i]);
             }
 
+            ANNs.subList(half, size).clear();
 
-            deltas.add(delta);
-            genomes.add(i);
+            // Si le first n'est plus dans la liste, on recalcule un nouveau first
+            if (!ANNs.contains(oldFirst)) {
+                calcFirstANN(oldFirst);
+            }
         }
-
-        // Un génome est meilleur que le first, il devient le first
-        double deltaMin = Collections.min(deltas); // Mettre l'enfant dans l'espèce qui a le delta minimum
-        int index = genomes.get(deltas.indexOf(deltaMin));
-        ANNs.get(index).first = true;
-        // Pas la peine d'enlever le first, car il sera remove
     }
 
-    // Retourne les génomes communs entre les 2 listes (ceux ayant le même n° d'innovation)
-    public ArrayList<ConnectionGene[]> commonsElements(ArrayList<ConnectionGene> genomes1, ArrayList<ConnectionGene> genomes2) {
-        ArrayList<ConnectionGene[]> rslt = new ArrayList<>();
-
-        // Comparer les 2 listes afin de voir ce qui est en commun
-        for (ConnectionGene genome1 : genomes1) {
-            for (ConnectionGene genome2 : genomes2) {
-                if (genome1.getInnovation() == genome2.getInnovation()) { // Si les 2 parents ont des gènes ayant le même n° d'innovation
-                    rslt.add(new ConnectionGene[]{genome1, genome2});
-                }
+    /*
+     * Quickselect : range dans les k premières cases de order les index des k
+     * meilleurs génomes, en temps linéaire en moyenne. Les génomes sont classés par
+     * fit décroissant puis, à fit égal, par index (comme après un tri stable).
+     */
+    private static void select(int[] order, double[] fit, int k) {
+        int low = 0;
+        int high = order.length - 1;
+
+        while (low < high) {
+            int pivot = partition(order, fit, low, high);
+
+            // Le pivot est à sa place définitive : on ne continue que du côté du k-ième
+            if (pivot == k - 1) {
+                return;
+            } else if (pivot < k - 1) {
+                low = pivot + 1;
+            } else {
+                high = pivot - 1;
             }
         }
-
-        return rslt;
     }
 
-    // Va retourner le plus grand n° d'innovation de tous les génomes ConnectionGene
-    private double bestConnectionInnovation(ArrayList<ConnectionGene> genomes) {
-        double max = genomes.get(0).getInnovation();
+    // Quicksort de order entre low et high (inclus), avec le même classement que select
+    private static void sort(int[] order, double[] fit, int low, int high) {
+        while (low < high) {
+            int pivot = partition(order, fit, low, high);
 
-        for (int i = 1; i < genomes.size(); i++) {
-            if (genomes.get(i).getInnovation() > max) {
-                max = genomes.get(i).getInnovation();
+            // Récursion sur le plus petit côté, boucle sur l'autre : pile en log(n)
+            if (pivot - low < high - pivot) {
+                sort(order, fit, low, pivot - 1);
+                low = pivot + 1;
+            } else {
+                sort(order, fit, pivot + 1, high);
+                high = pivot - 1;
             }
         }
-
-        return max;
     }
 
-    // Va retirer les génomes communs aux 2, et retourner une liste contenant que ceux qui ne sont pas communs
-    private ArrayList<ConnectionGene> removeCommonsElements(ArrayList<ConnectionGene> genomes1, ArrayList<ConnectionGene> genomes2) {
-        // Voir les éléments ayant des n° d'innovations communs et les retirer de la 2e liste
-        ArrayList<ConnectionGene[]> communs = commonsElements(genomes1, genomes2);
-        ArrayList<ConnectionGene> com = new ArrayList<>();
-        ArrayList<ConnectionGene> rslt = new ArrayList<>(genomes2); // Nouvelle liste sinon on effaçait la liste des génomes du parent !
+    /*
+     * Partitionne order entre low et high (inclus) autour d'un pivot (médiane du
+     * premier, du milieu et du dernier) : les meilleurs avant lui, les autres après.
+     * Retourne la place définitive du pivot.
+     */
+    private static int partition(int[] order, double[] fit, int low, int high) {
+        int middle = (low + high) >>> 1;
 
-        for (ConnectionGene[] genomes : communs) {
-            com.add(genomes[1]);
+        if (better(fit, order[middle], order[low])) {
+            swap(order, middle, low);
         }
 
-        rslt.removeAll(com); // La liste contient maintenant que les éléments qui ne sont pas dans la première liste fournie
-        return rslt;
-    }
-
-    // Retourne les génomes présents dans la 2e liste qui on un n° d'innovation compris dans le range de ceux de la première liste
-    public ArrayList<ConnectionGene> disjointsElements(ArrayList<ConnectionGene> genomes1, ArrayList<ConnectionGene> genomes2) {
-        ArrayList<ConnectionGene> rslt = new ArrayList<>(); // Nouvelle liste sinon on effaçait la liste des génomes du parent !
-
-        // On récupère le meilleur n° d'innovation
-        if (genomes1 != null && genomes1.size() > 0) {
-            double maxInnovation = bestConnectionInnovation(genomes1);
-
-            rslt = removeCommonsElements(genomes1, genomes2);
-
-            // On retire tous les éléments qui ont un n° d'innovation < que le n° d'innovation maximum de la première liste (donc on retire ceux qui sont disjoints)
-            rslt.removeIf(innovation -> innovation.getInnovation() < maxInnovation); // RemoveIf car sinon en bouclant pour retirer lançait une java.util.ConcurrentModificationException
+        if (better(fit, order[high], order[low])) {
+            swap(order, high, low);
         }
 
-        return rslt;
-    }
-
-    // Retourne les génomes présents dans la 2e liste qui on un n° d'innovation plus grand que ceux de la première liste
-    public ArrayList<ConnectionGene> excessElements(ArrayList<ConnectionGene> genomes1, ArrayList<ConnectionGene> genomes2) {
-        ArrayList<ConnectionGene> rslt = new ArrayList<>(); // Nouvelle liste sinon on effaçait la liste des génomes du parent !
-
-        // On récupère le meilleur n° d'innovation
-        if (genomes1 != null && genomes1.size() > 0) {
-            double maxInnovation = bestConnectionInnovation(genomes1);
-
-            rslt = removeCommonsElements(genomes1, genomes2);
+        if (better(fit, order[middle], order[high])) {
+            swap(order, middle, high);
+        }
 
-            // On retire tous les éléments qui ont un n° d'innovation > que le n° d'innovation maximum de la première liste (donc on retire ceux qui sont excessifs)
-            rslt.removeIf(innovation -> innovation.getInnovation() > maxInnovation); // RemoveIf car sinon en bouclant pour retirer lançait une java.util.ConcurrentModificationException
+        int pivot = order[high];
+        int store = low;
 
+        for (int i = low; i < high; i++) {
+            if (better(fit, order[i], pivot)) {
+                swap(order, i, store++);
+            }
         }
 
-        return rslt;
+        swap(order, store, high);
+
+        return store;
     }
 
-    // Vérifier si une mutation possédant le même n° d'innovation n'est pas déjà survenue pour les 2 parents
-    private int checkIncrementInnovation(ANN genome1, ANN genome2) {
-        int inno = getGlobalInnovation();
-        boolean incrInno = true;
+    // Si le génome a est classé avant le génome b
+    private static boolean better(double[] fit, int a, int b) {
+        int compare = Double.compare(fit[a], fit[b]);
 
-        for (Innovation innovation : genome1.Innovations) {
-            if (innovation.innovation == inno) { // Une mutation identique est déjà survenue, le n° d'innovation ne sera pas incrémenté
-                incrInno = false;
-                break;
-            }
-        }
+        return compare > 0 || compare == 0 && a < b;
+    }
 
-        for (Innovation innovation : genome2.Innovations) {
-            if (innovation.innovation == inno) { // Une mutation identique est déjà survenue, le n° d'innovation ne sera pas incrémenté
-                incrInno = false;
-                break;
-            }
-        }
+    private static void swap(int[] order, int i, int j) {
+        int tmp = order[i];
+        order[i] = order[j];
+        order[j] = tmp;
+    }
 
-        if (incrInno) {
-            globalInnovation++;
-        }
+    // delta = (C1 * E) / N + (C2 * D) / N + C3 * W
+    // C1, C2, C3 sont des coefficients à ajuster (dans exemple : 2, 2, 0.5)
+    // N = nombre de gènes du génome le plus grand
+    // E = nombre de gènes supplémentaires (excessifs)
+    // D = nombre de gènes disjoints
+    // W = différence de poids moyenne sur les gènes communs
+    // Permet de calculer l'ANN qui deviendra le nouveau membre représentatif de l'espèce
+    public void calcFirstANN(ANN firstMembre) {
+        // On teste la distance avec le premier membre de l'espèce (son créateur)
+        int n = getLargerANN();
+        double deltaMin = Double.POSITIVE_INFINITY;
+        int index = 0;
 
-        return globalInnovation;
-    }
+        for (int i = 0; i < ANNs.size(); i++) {
+            ANN genomeAComparer = ANNs.get(i);
 
-    // Va vérifier si une innovation identique n'existe pas déjà dans le génome (pour ne pas avoir de gènes en doublons)
-    private boolean checkConnectionGeneIdenticalExists(ArrayList<ConnectionGene> connectionGenes, ConnectionGene connectionGene) {
-        boolean ret = connectionGenes.contains(connectionGene); // Si la même innovation avec les mêmes n°, inputs et outputs
+            double delta = compatibility.distance(firstMembre.genes, genomeAComparer.genes, n, deltaMin);
 
-        if (!ret) { // Pas identiques
-            for (ConnectionGene connection : connectionGenes) {
-                if (connection.getInnovation() == connectionGene.getInnovation()) {
-                    ret = true;
-                } else if (connection.getInto() == connectionGene.getInto() && connection.getOut() == connectionGene.getOut()) {
-                    ret = true;
-                }
+            if (delta < deltaMin) { // Le premier génome ayant le delta minimum l'emporte
+                deltaMin = delta;
+                index = i;
             }
         }
 
-        return !ret;
+        // Un génome est meilleur que le first, il devient le first
+        ANNs.get(index).first = true;
+        // Pas la peine d'enlever le first, car il sera remove
     }
 
-    // Obtenir l'ANN comprenant le plus de ConnectionGene
+    // Obtenir l'ANN comprenant le plus de gènes de connexion
     public int getLargerANN() {
         int max = 0;
 
         for (ANN ann : ANNs) {
-            if (ann.conGeneList.size() > max) {
-                max = ann.conGeneList.size();
+            if (ann.genes.size() > max) {
+                max = ann.genes.size();
             }
         }
 
@@ -386,302 +371,413 @@ public class Specie {
         return null; // Le premier membre de l'espèce ne se fera jamais remove
     }
 
-    // Générer des enfants (ANN) à partir des ANNs restants
-    public ArrayList<ANN> crossANNs(int numChildren) {
-        // Faire des enfants selon les meilleurs fits
-        Random rand = new Random();
-        ArrayList<ANN> children = new ArrayList<>();
+    /*
+     * Croise les gènes des 2 parents en un seul passage : les 2 génomes étant triés
+     * par n° d'innovation, on les parcourt ensemble comme une fusion de listes
+     * triées et les gènes de l'enfant sont écrits au fur et à mesure, déjà triés.
+     */
+    private ConnectionGenes crossGenes(ANN genome1, ANN genome2, SplittableRandom rand) {
+        ConnectionGenes genes1 = genome1.genes;
+        ConnectionGenes genes2 = genome2.genes;
+        LongHashSet innovations = childInnovations.get();
+        LongHashSet connections = childConnections.get();
+
+        innovations.clear();
+        connections.clear();
+
+        // Pour les gènes n'ayant pas le même n° d'innovation (disjoints ou excessifs), on garde le gène du parent ayant le meilleur fit
+        // Si les fits des parents sont identiques, on tire le parent au hasard
+        boolean fromParent1 = genome1.fit > genome2.fit || genome1.fit == genome2.fit && rand.nextBoolean();
+
+        // Un génome croisé avec lui-même donne le même génome s'il n'a pas de gènes en doublon : l'enfant partage alors ses gènes
+        if (genome1 == genome2 && indexGenes(genes1, innovations, connections)) {
+            for (int gene = 0; gene < genes1.size(); gene++) {
+                rand.nextBoolean(); // Même tirage que pour des gènes communs, pour garder la même suite de nombres
+            }
 
-        if (ANNs.size() == 0) {
-            return children;
+            return new ConnectionGenes(genes1);
         }
 
-        for (int i = 0; i < numChildren; i++) {
-
-            // On prend 2 génomes au hasard
-            int rand1 = rand.nextInt(ANNs.size());
-            int rand2 = rand.nextInt(ANNs.size());
+        ConnectionGenes genomeChild = new ConnectionGenes(genes1.size() + genes2.size() + 2); // +2 pour les mutations
 
-            ANN genome1 = ANNs.get(rand1);
-            ANN genome2 = ANNs.get(rand2);
+        // Ces gènes ne sont comparés qu'à ceux d'un autre parent non vide (comme les anciennes listes de disjoints et d'excessifs)
+        boolean inherit1 = fromParent1 && genes2.size() > 0;
+        boolean inherit2 = !fromParent1 && genes1.size() > 0;
 
-            // Recette pour faire l'enfant :
-            // - Pour les gènes ayant le même n° d'innovation (communs aux 2 parents), on tire le gène à garder au hasard parmi les 2 parents
-            // - Pour les gènes n'ayant pas le même n° d'innovation (disjoints ou excessifs) :
-            //    --> Si les fits des parents sont identiques, on tire le gène à garder au hasard parmi les 2 parents
-            //    --> Sinon on garde le gène du parent ayant le meilleur fit
+        int i = 0;
+        int j = 0;
 
-            // Gène disjoint : gène n'ayant pas le même n° d'innovation du parent, mais se trouvant dans le range des n° d'innovations du parent
-            // Gène excessif : gène n'ayant pas le même n° d'innovation du parent, et se trouvant en dehors du range des n° d'innovations du parent
-
-            ArrayList<ConnectionGene[]> genomesCommuns = commonsElements(genome1.conGeneList, genome2.conGeneList);
-            ArrayList<ConnectionGene> genomesDisjointsParent1 = disjointsElements(genome2.conGeneList, genome1.conGeneList);
-            ArrayList<ConnectionGene> genomesDisjointsParent2 = disjointsElements(genome1.conGeneList, genome2.conGeneList);
-            ArrayList<ConnectionGene> genomesExcessifsParent1 = excessElements(genome2.conGeneList, genome1.conGeneList);
-            ArrayList<ConnectionGene> genomesExcessifsParent2 = excessElements(genome1.conGeneList, genome2.conGeneList);
-
-            ArrayList<ConnectionGene> genomeChild = new ArrayList<>();
+        while (i < genes1.size() || j < genes2.size()) {
+            if (j == genes2.size() || i < genes1.size() && genes1.getInnovation(i) < genes2.getInnovation(j)) { // Gène propre au parent 1
+                if (inherit1) {
+                    addConnectionGene(genomeChild, genes1, i, innovations, connections);
+                }
 
-            // Pour les gènes ayant le même n° d'innovation (communs aux 2 parents), on tire le gène à garder au hasard parmi les 2 parents
-            for (ConnectionGene[] connectionGenes : genomesCommuns) {
-                if (rand.nextBoolean()) { // Tirer au hasard le gène entre les 2 parents
-                    if (checkConnectionGeneIdenticalExists(genomeChild, connectionGenes[0])) { // N'ajouter la connection que s'il n'existe pas déjà dans le génome
-                        genomeChild.add(connectionGenes[0]); // Parent 1
-                    }
-                } else {
-                    if (checkConnectionGeneIdenticalExists(genomeChild, connectionGenes[1])) {
-                        genomeChild.add(connectionGenes[1]); // Parent 2
-                    }
+                i++;
+            } else if (i == genes1.size() || genes2.getInnovation(j) < genes1.getInnovation(i)) { // Gène propre au parent 2
+                if (inherit2) {
+                    addConnectionGene(genomeChild, genes2, j, innovations, connections);
                 }
-            }
 
-            // Pour les gènes n'ayant pas le même n° d'innovation (disjoints ou excessifs)
-            double fit1 = genome1.fit;
-            double fit2 = genome2.fit;
+                j++;
+            } else { // Gènes communs (même n° d'innovation), on tire le gène à garder au hasard parmi les 2 parents
+                int innovation = genes1.getInnovation(i);
+                int end1 = i;
+                int end2 = j;
 
-            // Si les fits des parents ne sont pas identiques, on garde le gène du parent ayant le meilleur fit
-            if (fit1 > fit2) { // Récupérer les gènes du parent 1
-                for (ConnectionGene connection : genomesDisjointsParent1) {
-                    if (checkConnectionGeneIdenticalExists(genomeChild, connection)) {
-                        genomeChild.add(connection);
-                    }
+                // Un n° d'innovation peut apparaître plusieurs fois dans un génome, chaque paire est alors considérée
+                while (end1 < genes1.size() && genes1.getInnovation(end1) == innovation) {
+                    end1++;
                 }
 
-                for (ConnectionGene connection : genomesExcessifsParent1) {
-                    if (checkConnectionGeneIdenticalExists(genomeChild, connection)) {
-                        genomeChild.add(connection);
-                    }
-                }
-            } else if (fit1 < fit2) { // Récupérer les gènes du parent 2
-                for (ConnectionGene connection : genomesDisjointsParent2) {
-                    if (checkConnectionGeneIdenticalExists(genomeChild, connection)) {
-                        genomeChild.add(connection);
-                    }
+                while (end2 < genes2.size() && genes2.getInnovation(end2) == innovation) {
+                    end2++;
                 }
 
-                for (ConnectionGene connection : genomesExcessifsParent2) {
-                    if (checkConnectionGeneIdenticalExists(genomeChild, connection)) {
-                        genomeChild.add(connection);
-                    }
-                }
-            } else {
-                // Si les fits des parents sont identiques, on tire le gène à garder au hasard parmi les 2 parents
-                if (rand.nextBoolean()) { // Tirer au hasard le gène entre les 2 parents
-                    for (ConnectionGene connection : genomesDisjointsParent1) {
-                        if (checkConnectionGeneIdenticalExists(genomeChild, connection)) {
-                            genomeChild.add(connection);
+                for (int gene1 = i; gene1 < end1; gene1++) {
+                    for (int gene2 = j; gene2 < end2; gene2++) {
+                        if (rand.nextBoolean()) { // Tirer au hasard le gène entre les 2 parents
+                            addConnectionGene(genomeChild, genes1, gene1, innovations, connections); // Parent 1
+                        } else {
+                            addConnectionGene(genomeChild, genes2, gene2, innovations, connections); // Parent 2
                         }
                     }
+                }
 
-                    for (ConnectionGene connection : genomesExcessifsParent1) {
-                        if (checkConnectionGeneIdenticalExists(genomeChild, connection)) {
-                            genomeChild.add(connection);
-                        }
-                    }
-                } else {
-                    for (ConnectionGene connection : genomesDisjointsParent2) {
-                        if (checkConnectionGeneIdenticalExists(genomeChild, connection)) {
-                            genomeChild.add(connection);
-                        }
-                    }
+                i = end1;
+                j = end2;
+            }
+        }
 
-                    for (ConnectionGene connection : genomesExcessifsParent2) {
-                        if (checkConnectionGeneIdenticalExists(genomeChild, connection)) {
-                            genomeChild.add(connection);
-                        }
-                    }
-                }
+        return genomeChild;
+    }
+
+    /*
+     * Remplit les index de l'enfant avec tous les gènes du génome. Retourne false
+     * (index vidés) si 2 gènes ont le même n° d'innovation ou la même connexion.
+     */
+    private static boolean indexGenes(ConnectionGenes genes, LongHashSet innovations, LongHashSet connections) {
+        for (int gene = 0; gene < genes.size(); gene++) {
+            if (!innovations.add(genes.getInnovation(gene)) || !connections.add(InnovationRegistry.key(genes.getInto(gene), genes.getOut(gene)))) {
+                innovations.clear();
+                connections.clear();
+                return false;
             }
+        }
+
+        return true;
+    }
+
+    /*
+     * Ajoute le gène du parent au génome de l'enfant s'il n'y est pas déjà (ni le
+     * même n° d'innovation, ni la même connexion), vérifié avec les index de
+     * l'enfant en construction
+     */
+    private void addConnectionGene(ConnectionGenes genomeChild, ConnectionGenes parent, int gene, LongHashSet innovations, LongHashSet connections) {
+        long connection = InnovationRegistry.key(parent.getInto(gene), parent.getOut(gene));
 
-            // On le fait muter (ou pas car 20% de chance de mutation)
-            if (rand.nextInt(100) < tauxMutation) {
-                int gene = -1;
-                float weight;
-                int inno;
-                int nbHiddenNodes;
-                int maxGeneConnection;
-                int maxGeneDestination;
-                int numGeneConnection;
-                int numGeneDestination;
+        if (!innovations.contains(parent.getInnovation(gene)) && !connections.contains(connection)) { // N'ajouter la connection que s'il n'existe pas déjà dans le génome
+            genomeChild.add(parent, gene);
+            innovations.add(parent.getInnovation(gene));
+            connections.add(connection);
+        }
+    }
 
-                switch (rand.nextInt(4)) {
-                    case 0: // Ajout d'une nouvelle connexion
+    /*
+     * Fait un enfant à partir de 2 génomes de l'espèce tirés au hasard, avec le
+     * générateur propre à cet enfant. Peut être appelé en parallèle pour plusieurs
+     * enfants (l'espèce n'est que lue) : les connexions ajoutées par mutation n'ont
+     * pas encore de n° d'innovation, l'enfant est terminé par birth.
+     */
+    public Offspring crossANN(SplittableRandom rand) {
+        // On prend 2 génomes au hasard (le meilleur de chaque tournoi)
+        ANN genome1 = pickParent(rand);
+        ANN genome2 = pickParent(rand);
 
-                        // Prendre un noeud au hasard et rajouter une connexion avec un autre noeud au hasard (pas le même, ni un avec lequel il est déjà connecté, ni vers une entrée)
+        // Recette pour faire l'enfant :
+        // - Pour les gènes ayant le même n° d'innovation (communs aux 2 parents), on tire le gène à garder au hasard parmi les 2 parents
+        // - Pour les gènes n'ayant pas le même n° d'innovation (disjoints ou excessifs) :
+        //    --> Si les fits des parents sont identiques, on tire le gène à garder au hasard parmi les 2 parents
+        //    --> Sinon on garde le gène du parent ayant le meilleur fit
 
-                        nbHiddenNodes = 0;
+        // Gène disjoint : gène n'ayant pas le même n° d'innovation du parent, mais se trouvant dans le range des n° d'innovations du parent
+        // Gène excessif : gène n'ayant pas le même n° d'innovation du parent, et se trouvant en dehors du range des n° d'innovations du parent
 
-                        if (genome1.getHiddensIndexs().size() > 0) {
-                            nbHiddenNodes = Collections.max(genome1.getHiddensIndexs());
-                        }
+        ConnectionGenes genomeChild = crossGenes(genome1, genome2, rand);
+        LongHashSet connections = childConnections.get(); // Connexions de l'enfant, remplies par crossGenes
+        Offspring child = new Offspring(genome1, genome2, genomeChild);
 
-                        maxGeneConnection = genome1.getNbInputs() + 1 + nbHiddenNodes; // +1 pour le biais
-                        maxGeneDestination = genome1.getNbInputs() + 1 + nbHiddenNodes + genome1.getNbOutputs();
+        // On le fait muter (ou pas car 20% de chance de mutation)
+        if (rand.nextInt(100) < tauxMutation) {
+            int gene;
+            float weight;
+            long link; // Connexion choisie par pickLink
 
-                        do { // Boucler tant qu'on ne se relie pas à soi-même
-                            numGeneConnection = rand.nextInt(maxGeneConnection);
+            switch (rand.nextInt(4)) {
+                case 0: // Ajout d'une nouvelle connexion
 
-                            // Pour avoir un range de valeurs, ne pas prendre les entrées mais garder les cachés
-                            numGeneDestination = rand.nextInt(maxGeneDestination - genome1.getNbInputs()) + genome1.getNbInputs();
+                    // Prendre un noeud au hasard et rajouter une connexion avec un autre noeud au hasard (pas le même, ni un avec lequel il est déjà connecté, ni vers une entrée)
+                    link = pickLink(genome1.getRoles(), connections, false, rand);
 
-                            // Si on a pris une sortie, on remplace la valeur par le numéro du node de sortie
-                            if (numGeneDestination >= maxGeneDestination - genome1.getNbOutputs()) {
-                                numGeneDestination = genome1.getOutputs().get(maxGeneDestination - numGeneDestination - 1).getNumero();
-                            }
+                    if (link == -1) { // Tous les noeuds sont déjà reliés entre eux, pas de mutation
+                        break;
+                    }
 
-                            // Check pour voir si la connexion n'existe pas déjà
-                            for (ConnectionGene connectionGene : genomeChild) {
-                                if (connectionGene.getInto() == numGeneConnection && connectionGene.getOut() == numGeneDestination || connectionGene.getInto() == numGeneDestination && connectionGene.getOut() == numGeneConnection) {
-                                    // Si la connexion existe déjà, on ne la prend pas
-                                    numGeneDestination = numGeneConnection;
-                                    break;
-                                }
-                            }
-                        } while (numGeneConnection == numGeneDestination);
+                    // nextFloat donne une valeur entre 0 et 1 du coup * 10 pour avoir une valeur en 0 et 10
+                    weight = nextFloat(rand) * 10;
 
-                        // Récupérer le n° d'innovation global et vérifier dans la liste dse Innovations si une mutation identique s'est déjà produite, dans ce cas-là, ne pas incrémenter le n° d'innovation
-                        inno = checkIncrementInnovation(genome1, genome2);
+                    if (rand.nextInt(100) < 50) { // Une chance sur deux qu'il soit en négatif valeur entre -10 et 10
+                        weight -= weight * 2;
+                    }
 
-                        // nextFloat donne une valeur entre 0 et 1 du coup * 10 pour avoir une valeur en 0 et 10
-                        weight = rand.nextFloat() * 10;
+                    child.addConnection(source(link), destination(link), weight); // Son n° d'innovation sera donné par birth
 
-                        if (rand.nextInt(100) < 50) { // Une chance sur deux qu'il soit en négatif valeur entre -10 et 10
-                            weight -= weight * 2;
-                        }
+                    break;
+                case 1: // Ajout d'un nouveau noeud
 
-                        ConnectionGene newConnection = new ConnectionGene(numGeneConnection, numGeneDestination, inno, weight, true);
-                        genomeChild.add(newConnection);
+                    // On prend 2 noeuds au hasard, et on rajoute un nouveau noeud entre son entrée et sa sortie, puis s'ils avaient déjà une connexion entre eux, on désactive l'ancienne connexion
+                    link = pickLink(genome1.getRoles(), connections, true, rand);
 
+                    if (link == -1) {
                         break;
-                    case 1: // Ajout d'un nouveau noeud
+                    }
 
-                        // On prend 2 noeuds au hasard, et on rajoute un nouveau noeud entre son entrée et sa sortie, puis s'ils avaient déjà une connexion entre eux, on désactive l'ancienne connexion
+                    int numGeneConnection = source(link);
+                    int numGeneDestination = destination(link);
+                    boolean connexionExisteDeja = connections.contains(link) || connections.contains(InnovationRegistry.key(numGeneDestination, numGeneConnection));
 
-                        nbHiddenNodes = 0;
+                    // On récupère un nouveau n° de noeud (nombre de noeuds cachés + nombre d'entrées + biais + 1)
+                    int max = genome1.getRoles().getNbHiddens() + genome1.getNbInputs() + 2;
 
-                        if (genome1.getHiddensIndexs().size() > 0) {
-                            nbHiddenNodes = Collections.max(genome1.getHiddensIndexs());
-                        }
+                    // nextFloat donne une valeur entre 0 et 1 du coup * 10 pour avoir une valeur en 0 et 10
+                    weight = nextFloat(rand) * 10;
+
+                    if (rand.nextBoolean()) { // Une chance sur deux qu'il soit en négatif valeur entre -10 et 10
+                        weight -= weight * 2;
+                    }
 
-                        maxGeneConnection = genome1.getNbInputs() + 1 + nbHiddenNodes; // +1 pour le biais
-                        maxGeneDestination = genome1.getNbInputs() + 1 + nbHiddenNodes + genome1.getNbOutputs();
+                    // Première connexion : de l'entrée vers le nouveau noeud
+                    float weight1 = weight;
+
+                    // nextFloat donne une valeur entre 0 et 1 du coup * 10 pour avoir une valeur en 0 et 10
+                    weight = nextFloat(rand) * 10;
+
+                    if (rand.nextBoolean()) { // Une chance sur deux qu'il soit en négatif valeur entre -10 et 10
+                        weight -= weight * 2;
+                    }
 
-                        boolean connexionExisteDeja;
+                    // Désactiver le gène qui était là avant (le premier reliant ces 2 noeuds)
+                    if (connexionExisteDeja) {
+                        gene = indexOfLink(genomeChild, numGeneConnection, numGeneDestination);
+                        genomeChild.setEnabled(gene, false);
+                    }
 
-                        do { // Boucler tant qu'on ne se relie pas à soi-même
-                            connexionExisteDeja = false;
+                    // Leurs n° d'innovation seront donnés par birth
+                    child.addConnection(numGeneConnection, max, weight1);
+                    child.addConnection(max, numGeneDestination, weight);
 
-                            numGeneConnection = rand.nextInt(maxGeneConnection);
+                    break;
+                case 2: // Changer le poids d'une connexion
+                    if (genomeChild.size() > 0) {
+                        gene = rand.nextInt(genomeChild.size());
 
-                            // Pour avoir un range de valeurs, ne pas prendre les entrées mais garder les cachés
-                            numGeneDestination = rand.nextInt(maxGeneDestination - genome1.getNbInputs()) + genome1.getNbInputs();
+                        if (rand.nextInt(2) == 0) {
+                            // nextFloat donne une valeur entre 0 et 1 du coup * 10 pour avoir une valeur en 0 et 10
+                            weight = nextFloat(rand) * 10;
 
-                            // Si on a pris une sortie, on remplace la valeur par le numéro du node de sortie
-                            if (numGeneDestination >= maxGeneDestination - genome1.getNbOutputs()) {
-                                numGeneDestination = genome1.getOutputs().get(maxGeneDestination - numGeneDestination - 1).getNumero();
+                            if (rand.nextBoolean()) { // Une chance sur deux qu'il soit en négatif valeur entre -10 et 10
+                                weight -= weight * 2;
                             }
+                        } else {
+                            weight = genomeChild.getWeight(gene);
+
+                            if (rand.nextBoolean()) {
+                                weight += nextFloat(rand) * rand.nextInt(5); // On incrémente d'une valeur flottante aléatoire entre 0 et 5
 
-                            // Check pour voir si la connexion n'existe pas déjà
-                            for (int j = 0; j < genomeChild.size(); j++) {
-                                ConnectionGene connectionGene = genomeChild.get(j);
-                                if (connectionGene.getInto() == numGeneConnection && connectionGene.getOut() == numGeneDestination || connectionGene.getInto() == numGeneDestination && connectionGene.getOut() == numGeneConnection) {
-                                    // Si la connexion existe déjà, on ne la prend pas
-                                    connexionExisteDeja = true;
-                                    gene = j;
-                                    break;
+                                if (weight > 10) {
+                                    weight = 10;
+                                }
+                            } else {
+                                weight -= nextFloat(rand) * rand.nextInt(5); // On décrémente d'une valeur flottante aléatoire entre 0 et 5
+
+                                if (weight < -10) {
+                                    weight = -10;
                                 }
                             }
-                        } while (numGeneConnection == numGeneDestination);
+                        }
+
+                        genomeChild.setWeight(gene, weight);
+                    }
 
-                        // On récupère un nouveau n° de noeud (nombre de noeuds cachés + nombre d'entrées + biais + 1)
-                        int max = genome1.getHiddens().size() + genome1.getNbInputs() + 2;
+                    break;
+                case 3: // Activer ou désactiver une connexion
+                    if (genomeChild.size() > 0) {
+                        gene = rand.nextInt(genomeChild.size());
+                        genomeChild.switchEnabled(gene);
+                    }
 
-                        // Récupérer le n° d'innovation global et vérifier dans la liste dse Innovations si une mutation identique s'est déjà produite, dans ce cas-là, ne pas incrémenter le n° d'innovation
-                        inno = checkIncrementInnovation(genome1, genome2);
+                    break;
+            }
+        }
+        return child;
+    }
 
-                        // nextFloat donne une valeur entre 0 et 1 du coup * 10 pour avoir une valeur en 0 et 10
-                        weight = rand.nextFloat() * 10;
+    /*
+     * Termine un enfant fait par crossANN : donne leur n° d'innovation aux
+     * connexions ajoutées par mutation, puis crée l'ANN. Les enfants sont terminés
+     * un par un et toujours dans le même ordre, les n° attribués aux nouvelles
+     * connexions ne dépendent donc pas des threads.
+     */
+    public ANN birth(Offspring child, InnovationRegistry innovations) {
+        for (int k = 0; k < child.nbConnections; k++) {
+            // Une connexion déjà apparue ailleurs (dans n'importe quelle espèce) garde son n° d'innovation
+            int inno = innovations.innovation(child.into[k], child.out[k]);
 
-                        if (rand.nextBoolean()) { // Une chance sur deux qu'il soit en négatif valeur entre -10 et 10
-                            weight -= weight * 2;
-                        }
+            child.genes.add(child.into[k], child.out[k], inno, child.weight[k], true);
+        }
 
-                        ConnectionGene newConnection1 = new ConnectionGene(numGeneConnection, max, inno, weight, true);
+        // On peut donc créer l'enfant
+        ANN ann = new ANN(child.genes, child.genome1.getNbInputs(), child.genome1.getNbOutputs(), child.genome1.getNbMaxHiddenNodes());
+        ann.setActivation(child.genome1.getActivation());
 
-                        // Récupérer le n° d'innovation global et vérifier dans la liste dse Innovations si une mutation identique s'est déjà produite, dans ce cas-là, ne pas incrémenter le n° d'innovation
-                        inno = checkIncrementInnovation(genome1, genome2);
+        return ann;
+    }
 
-                        // nextFloat donne une valeur entre 0 et 1 du coup * 10 pour avoir une valeur en 0 et 10
-                        weight = rand.nextFloat() * 10;
+    /*
+     * Tire au hasard une connexion pour une mutation : la source parmi les entrées,
+     * le biais et les cachés, la destination parmi les cachés et les sorties, sans
+     * relier un noeud à lui-même ni, si existing est false, 2 noeuds déjà reliés
+     * dans un sens ou dans l'autre. Après MAX_ATTEMPTS tirages ratés, on choisit
+     * directement parmi toutes les paires valides : le tirage reste uniforme et se
+     * termine toujours. Retourne la connexion (voir InnovationRegistry.key), ou -1
+     * si aucune n'est possible.
+     */
+    private static long pickLink(NodeRoles roles, LongHashSet connections, boolean existing, SplittableRandom rand) {
+        int maxGeneConnection = roles.getNbInputs() + 1 + roles.getMaxHidden(); // +1 pour le biais
+        int maxGeneDestination = roles.getNbInputs() + 1 + roles.getMaxHidden() + roles.getNbOutputs();
+        int nbDestinations = maxGeneDestination - roles.getNbInputs(); // Pour avoir un range de valeurs, ne pas prendre les entrées mais garder les cachés
 
-                        if (rand.nextBoolean()) { // Une chance sur deux qu'il soit en négatif valeur entre -10 et 10
-                            weight -= weight * 2;
-                        }
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            int source = rand.nextInt(maxGeneConnection);
+            int destination = destinationNode(roles, rand.nextInt(nbDestinations) + roles.getNbInputs(), maxGeneDestination);
 
-                        ConnectionGene newConnection2 = new ConnectionGene(max, numGeneDestination, inno, weight, true);
+            if (isValidLink(connections, existing, source, destination)) {
+                return InnovationRegistry.key(source, destination);
+            }
+        }
 
-                        // Désactiver le gène qui était là avant
-                        if (connexionExisteDeja) {
-                            genomeChild.get(gene).setEnabled(false);
-                        }
+        // Compter les paires valides, puis prendre l'une d'elles au hasard
+        int count = 0;
 
-                        genomeChild.add(newConnection1);
-                        genomeChild.add(newConnection2);
+        for (int source = 0; source < maxGeneConnection; source++) {
+            for (int value = roles.getNbInputs(); value < maxGeneDestination; value++) {
+                if (isValidLink(connections, existing, source, destinationNode(roles, value, maxGeneDestination))) {
+                    count++;
+                }
+            }
+        }
 
-                        break;
-                    case 2: // Changer le poids d'une connexion
-                        if (genomeChild.size() > 0) {
-                            gene = rand.nextInt(genomeChild.size());
+        int k = count > 0 ? rand.nextInt(count) : 0;
 
-                            if (rand.nextInt(2) == 0) {
-                                // nextFloat donne une valeur entre 0 et 1 du coup * 10 pour avoir une valeur en 0 et 10
-                                weight = rand.nextFloat() * 10;
+        for (int source = 0; source < maxGeneConnection; source++) {
+            for (int value = roles.getNbInputs(); value < maxGeneDestination; value++) {
+                int destination = destinationNode(roles, value, maxGeneDestination);
 
-                                if (rand.nextBoolean()) { // Une chance sur deux qu'il soit en négatif valeur entre -10 et 10
-                                    weight -= weight * 2;
-                                }
-                            } else {
-                                weight = genomeChild.get(gene).getWeight();
+                if (isValidLink(connections, existing, source, destination) && k-- == 0) {
+                    return InnovationRegistry.key(source, destination);
+                }
+            }
+        }
 
-                                if (rand.nextBoolean()) {
-                                    weight += rand.nextFloat() * rand.nextInt(5); // On incrémente d'une valeur flottante aléatoire entre 0 et 5
+        return -1;
+    }
 
-                                    if (weight > 10) {
-                                        weight = 10;
-                                    }
-                                } else {
-                                    weight -= rand.nextFloat() * rand.nextInt(5); // On décrémente d'une valeur flottante aléatoire entre 0 et 5
+    // Si on a pris une sortie, on remplace la valeur par le numéro du node de sortie
+    private static int destinationNode(NodeRoles roles, int value, int maxGeneDestination) {
+        if (value >= maxGeneDestination - roles.getNbOutputs()) {
+            return roles.getOutput(maxGeneDestination - value - 1);
+        }
 
-                                    if (weight < -10) {
-                                        weight = -10;
-                                    }
-                                }
-                            }
+        return value;
+    }
 
-                            genomeChild.get(gene).setWeight(weight);
-                        }
+    private static boolean isValidLink(LongHashSet connections, boolean existing, int source, int destination) {
+        if (source == destination) { // On ne se relie pas à soi-même
+            return false;
+        }
 
-                        break;
-                    case 3: // Activer ou désactiver une connexion
-                        if (genomeChild.size() > 0) {
-                            gene = rand.nextInt(genomeChild.size());
-                            boolean enable = genomeChild.get(gene).switchEnabled();
+        return existing || !connections.contains(InnovationRegistry.key(source, destination)) && !connections.contains(InnovationRegistry.key(destination, source));
+    }
 
-                        }
+    private static int source(long link) {
+        return (int) (link >>> 32);
+    }
 
-                        break;
-                }
+    private static int destination(long link) {
+        return (int) link;
+    }
+
+    // Sélection par tournoi : tire tournamentSize génomes au hasard et garde le meilleur (le premier tiré à fit égal)
+    private ANN pickParent(SplittableRandom rand) {
+        ANN best = ANNs.get(rand.nextInt(ANNs.size()));
+
+        for (int i = 1; i < tournamentSize; i++) {
+            ANN ann = ANNs.get(rand.nextInt(ANNs.size()));
+
+            if (ann.fit > best.fit) {
+                best = ann;
             }
-            // On peut donc créer l'enfant
-            ANN child = new ANN(genomeChild, genome1.getNbInputs(), genome1.getNbOutputs(), genome1.getNbMaxHiddenNodes());
-            children.add(child);
         }
 
-        return children;
+        return best;
+    }
+
+    // Index du premier gène reliant les 2 noeuds, dans un sens ou dans l'autre, ou -1
+    private static int indexOfLink(ConnectionGenes genes, int node1, int node2) {
+        int forward = genes.indexOfConnection(node1, node2);
+        int backward = genes.indexOfConnection(node2, node1);
+
+        if (forward == -1 || backward == -1) {
+            return Math.max(forward, backward);
+        }
+
+        return Math.min(forward, backward);
+    }
+
+    // Équivalent de Random.nextFloat : valeur entre 0 (inclus) et 1 (exclus), sur 24 bits
+    private static float nextFloat(SplittableRandom rand) {
+        return rand.nextInt(1 << 24) / (float) (1 << 24);
     }
 
     @Override
     public String toString() {
-        return "(Espèce " + specieNumber + ", stable : " + stableCounter + ", n° innovation global : " + globalInnovation + ", nombre d'individus : " + ANNs.size() + ")";
+        return "(Espèce " + specieNumber + ", stable : " + stableCounter + ", nombre d'individus : " + ANNs.size() + ")";
+    }
+
+    /*
+     * Enfant en cours de création : ses parents, ses gènes, et les connexions
+     * ajoutées par mutation qui attendent leur n° d'innovation (2 au plus).
+     */
+    public static class Offspring {
+        private final ANN genome1; // Parent dont l'enfant reprend les paramètres
+        private final ANN genome2;
+        private final ConnectionGenes genes;
+        private final int[] into = new int[2];
+        private final int[] out = new int[2];
+        private final float[] weight = new float[2];
+        private int nbConnections;
+
+        private Offspring(ANN genome1, ANN genome2, ConnectionGenes genes) {
+            this.genome1 = genome1;
+            this.genome2 = genome2;
+            this.genes = genes;
+        }
+
+        private void addConnection(int into, int out, float weight) {
+            this.into[nbConnections] = into;
+            this.out[nbConnections] = out;
+            this.weight[nbConnections] = weight;
+            nbConnections++;
+        }
     }
 }
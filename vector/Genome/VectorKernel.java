@@ -0,0 +1,121 @@
+package Genome;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * Boucles de l'évaluation par lot écrites avec l'API Vector (jdk.incubator.vector),
+ * chargées par BatchKernel quand elles sont disponibles. Ce fichier est à part
+ * car il demande Java 16 ou plus :
+ *
+ *   javac --release 17 --add-modules jdk.incubator.vector -cp out -d out vector/Genome/VectorKernel.java
+ *   java --add-modules jdk.incubator.vector -cp out Main
+ *
+ * Les sommes et les activations approchées font les mêmes opérations float, dans
+ * le même ordre, que les boucles scalaires : le résultat est identique au bit
+ * près. La sigmoide exacte est calculée en double, comme Activation.exact, mais
+ * avec l'exponentielle de l'API Vector : elle peut différer de Math.exp d'un ulp
+ * (en double), donc très rarement d'un ulp sur le float obtenu. La table n'est
+ * pas vectorisée (il faudrait lire la table à des index différents par voie).
+ */
+final class VectorKernel extends BatchKernel {
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> HALF_FLOATS = VectorSpecies.of(float.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2)); // Autant de voies que DOUBLES
+
+    @Override
+    void accumulate(float[] sums, float[] m, int src, float weight, int length) {
+        int s = 0;
+
+        for (int bound = FLOATS.loopBound(length); s < bound; s += FLOATS.length()) {
+            FloatVector sum = FloatVector.fromArray(FLOATS, sums, s);
+            FloatVector value = FloatVector.fromArray(FLOATS, m, src + s);
+            sum.add(value.mul(weight)).intoArray(sums, s);
+        }
+
+        for (; s < length; s++) {
+            sums[s] += m[src + s] * weight;
+        }
+    }
+
+    @Override
+    void activate(Activation activation, float[] sums, float[] m, int row, int length) {
+        int s;
+
+        switch (activation) {
+            case Exact:
+                s = exact(sums, m, row, length);
+                break;
+            case PiecewiseLinear:
+                s = piecewiseLinear(sums, m, row, length);
+                break;
+            case Rational:
+                s = rational(sums, m, row, length);
+                break;
+            default:
+                activation.apply(sums, m, row, length);
+                return;
+        }
+
+        // Échantillons restants, moins nombreux qu'un vecteur
+        for (; s < length; s++) {
+            m[row + s] = activation.apply(sums[s]);
+        }
+    }
+
+    @Override
+    String getName() {
+        return "Vector API (" + FLOATS.length() + " floats)";
+    }
+
+    // 1 / (1 + e^(-4.9x)) en double, retourne le nombre d'échantillons traités
+    private static int exact(float[] sums, float[] m, int row, int length) {
+        int s = 0;
+
+        for (int bound = HALF_FLOATS.loopBound(length); s < bound; s += HALF_FLOATS.length()) {
+            DoubleVector x = (DoubleVector) FloatVector.fromArray(HALF_FLOATS, sums, s).convertShape(VectorOperators.F2D, DOUBLES, 0);
+            DoubleVector rslt = DoubleVector.broadcast(DOUBLES, 1).div(x.mul(-4.9).lanewise(VectorOperators.EXP).add(1));
+            ((FloatVector) rslt.convertShape(VectorOperators.D2F, HALF_FLOATS, 0)).intoArray(m, row + s);
+        }
+
+        return s;
+    }
+
+    // Mêmes segments que Activation.piecewiseLinear, choisis par masques
+    private static int piecewiseLinear(float[] sums, float[] m, int row, int length) {
+        int s = 0;
+
+        for (int bound = FLOATS.loopBound(length); s < bound; s += FLOATS.length()) {
+            FloatVector x = FloatVector.fromArray(FLOATS, sums, s);
+            FloatVector y = x.mul(4.9f).abs();
+            FloatVector rslt = y.mul(0.25f).add(0.5f);
+
+            rslt = rslt.blend(y.mul(0.125f).add(0.625f), y.compare(VectorOperators.GE, 1));
+            rslt = rslt.blend(y.mul(0.03125f).add(0.84375f), y.compare(VectorOperators.GE, 2.375f));
+            rslt = rslt.blend(1, y.compare(VectorOperators.GE, 5));
+
+            VectorMask<Float> negative = x.compare(VectorOperators.LT, 0);
+            rslt.blend(FloatVector.broadcast(FLOATS, 1).sub(rslt), negative).intoArray(m, row + s);
+        }
+
+        return s;
+    }
+
+    // Même formule que Activation.rational
+    private static int rational(float[] sums, float[] m, int row, int length) {
+        int s = 0;
+
+        for (int bound = FLOATS.loopBound(length); s < bound; s += FLOATS.length()) {
+            FloatVector z = FloatVector.fromArray(FLOATS, sums, s).mul(2.45f).min(3).max(-3);
+            FloatVector z2 = z.mul(z);
+            FloatVector ratio = z.mul(z2.add(27)).div(z2.mul(9).add(27));
+            ratio.mul(0.5f).add(0.5f).intoArray(m, row + s);
+        }
+
+        return s;
+    }
+}